@@ -0,0 +1,54 @@
+package com.wekaproject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 10-fold cross-validation of each approach on its own data view, the same way
+ * ClassificationEngine evaluates it. Folds run on the calling thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ClassificationBenchmark {
+    @Param({"2000"})
+    public int rows;
+
+    @Param({"20"})
+    public int attributes;
+
+    @Param({"NAIVE_BAYES", "J48", "RANDOM_FOREST", "RANDOM_TREE", "IBK_3", "IBK_5", "IBK_7",
+            "LOGISTIC", "MULTILAYER_PERCEPTRON", "SVM"})
+    public Approach approach;
+
+    private Instances data;
+    private final CrossValidator crossValidator = new CrossValidator(null);
+
+    @Setup
+    public void prepareView() throws Exception {
+        DataProcessor processor = new DataProcessor(SyntheticDataset.get(rows, attributes).toString());
+        data = processor.getView(approach.getView());
+    }
+
+    @Benchmark
+    public Evaluation crossValidate() throws Exception {
+        return crossValidator.crossValidate(approach.createClassifier(), data, 10, new Random(1));
+    }
+}
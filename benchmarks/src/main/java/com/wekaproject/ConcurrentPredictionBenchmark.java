@@ -0,0 +1,139 @@
+package com.wekaproject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-row prediction throughput under contention at 1, 4, 16 and 64 threads:
+ * ConcurrentPredictor with its per-thread model copies, against one shared model
+ * and pipeline behind a lock (the only safe way to share a Weka classifier). The
+ * model and pipeline are built the way ClassificationEngine builds the best one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConcurrentPredictionBenchmark {
+    @Param({"2000"})
+    public int rows;
+
+    @Param({"20"})
+    public int attributes;
+
+    @Param({"LOGISTIC", "IBK_5", "MULTILAYER_PERCEPTRON", "RANDOM_FOREST"})
+    public Approach approach;
+
+    private double[][] inputRows;
+    private Classifier sharedModel;
+    private PreprocessingPipeline sharedPipeline;
+    private ConcurrentPredictor predictor;
+
+    /**
+     * Position of one benchmark thread in the input rows
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void trainModel() throws Exception {
+        DataProcessor processor = new DataProcessor(SyntheticDataset.get(rows, attributes).toString());
+        Instances view = processor.getMutableCopy(approach.getView());
+        sharedModel = approach.createClassifier();
+        sharedModel.buildClassifier(view);
+        sharedPipeline = new PreprocessingPipeline(
+            processor.getOriginalData(),
+            processor.getFittedFilters(approach.getView()),
+            view
+        );
+        predictor = new ConcurrentPredictor(sharedModel, sharedPipeline);
+
+        Instances data = processor.getOriginalData();
+        inputRows = new double[data.numInstances()][];
+        for (int i = 0; i < inputRows.length; i++) {
+            inputRows[i] = data.instance(i).toDoubleArray();
+        }
+    }
+
+    private double[] nextRow(Cursor cursor) {
+        double[] row = inputRows[cursor.next];
+        cursor.next = (cursor.next + 1) % inputRows.length;
+        return row;
+    }
+
+    private double perThreadCopies(Cursor cursor) throws Exception {
+        return predictor.classify(nextRow(cursor));
+    }
+
+    private double sharedModel(Cursor cursor) throws Exception {
+        double[] row = nextRow(cursor);
+        synchronized (sharedModel) {
+            return sharedModel.classifyInstance(sharedPipeline.transform(sharedPipeline.createInput(row)));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double perThreadCopies01(Cursor cursor) throws Exception {
+        return perThreadCopies(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double perThreadCopies04(Cursor cursor) throws Exception {
+        return perThreadCopies(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public double perThreadCopies16(Cursor cursor) throws Exception {
+        return perThreadCopies(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public double perThreadCopies64(Cursor cursor) throws Exception {
+        return perThreadCopies(cursor);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double sharedModel01(Cursor cursor) throws Exception {
+        return sharedModel(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double sharedModel04(Cursor cursor) throws Exception {
+        return sharedModel(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public double sharedModel16(Cursor cursor) throws Exception {
+        return sharedModel(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public double sharedModel64(Cursor cursor) throws Exception {
+        return sharedModel(cursor);
+    }
+}
@@ -0,0 +1,86 @@
+package com.wekaproject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instances;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dataset loading and the DataProcessor transformations. The processor memoizes its
+ * views, so each transformation gets a freshly loaded processor per invocation.
+ * The JVM runs with the columnar cache off so parseArff always parses; the cached
+ * path is measured separately through ColumnarCache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dwekaproject.columnarCache=false")
+public class DataProcessorBenchmark {
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"20"})
+    public int attributes;
+
+    private String datasetPath;
+
+    @Setup(Level.Trial)
+    public void createDataset() throws Exception {
+        Path file = SyntheticDataset.get(rows, attributes);
+        datasetPath = file.toString();
+        DataProcessor processor = new DataProcessor(datasetPath);
+        ColumnarCache.write(datasetPath, processor.getOriginalData(), processor.getFingerprint());
+    }
+
+    @Benchmark
+    public Instances parseArff() throws Exception {
+        return new DataProcessor(datasetPath).getOriginalData();
+    }
+
+    @Benchmark
+    public Instances inspectAndParseArff() throws Exception {
+        return new DataProcessor(new DatasetInspector(datasetPath)).getOriginalData();
+    }
+
+    @Benchmark
+    public Instances loadColumnarCache() throws Exception {
+        return ColumnarCache.load(datasetPath).getData();
+    }
+
+    @Benchmark
+    public Instances numericToNominal(FreshProcessor fresh) throws Exception {
+        return fresh.processor.numericToNominal();
+    }
+
+    @Benchmark
+    public Instances toNumericNormalized(FreshProcessor fresh) throws Exception {
+        return fresh.processor.toNumericNormalized();
+    }
+
+    /**
+     * A processor with no views computed yet, reloaded before every invocation
+     */
+    @State(Scope.Thread)
+    public static class FreshProcessor {
+        DataProcessor processor;
+
+        @Setup(Level.Invocation)
+        public void load(DataProcessorBenchmark benchmark) throws Exception {
+            processor = new DataProcessor(benchmark.datasetPath);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.wekaproject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full comparison: every approach cross-validated and the best one trained.
+ * A new engine is created for each invocation so no preprocessed view is reused,
+ * and cached evaluations and saved models are switched off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Dwekaproject.evaluationCache=false", "-Dwekaproject.modelStore=false"})
+public class EngineBenchmark {
+    @Param({"2000"})
+    public int rows;
+
+    @Param({"20"})
+    public int attributes;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private String datasetPath;
+    private ClassificationEngine engine;
+
+    @Setup(Level.Trial)
+    public void createDataset() throws Exception {
+        datasetPath = SyntheticDataset.get(rows, attributes).toString();
+    }
+
+    @Setup(Level.Invocation)
+    public void createEngine() throws Exception {
+        engine = new ClassificationEngine(datasetPath);
+        engine.setParallel(parallel);
+        engine.setParallelFolds(parallel);
+    }
+
+    @Benchmark
+    public List<Result> runAllClassifications() throws Exception {
+        return engine.runAllClassifications();
+    }
+}
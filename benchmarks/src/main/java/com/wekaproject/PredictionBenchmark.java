@@ -0,0 +1,68 @@
+package com.wekaproject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instances;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prediction latency of the trained best model: one row through predictClass, and
+ * a whole batch through predictBatch. The engine is trained once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PredictionBenchmark {
+    @Param({"2000"})
+    public int rows;
+
+    @Param({"20"})
+    public int attributes;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    private ClassificationEngine engine;
+    private double[][] singleRows;
+    private Instances batch;
+    private int next;
+
+    @Setup
+    public void trainEngine() throws Exception {
+        engine = new ClassificationEngine(SyntheticDataset.get(rows, attributes).toString());
+        engine.setParallel(true);
+        engine.runAllClassifications();
+
+        Instances data = engine.getDataProcessor().getOriginalData();
+        singleRows = new double[data.numInstances()][];
+        for (int i = 0; i < singleRows.length; i++) {
+            singleRows[i] = data.instance(i).toDoubleArray();
+        }
+        batch = new Instances(data, 0, Math.min(batchSize, data.numInstances()));
+    }
+
+    @Benchmark
+    public String predictClass() throws Exception {
+        double[] row = singleRows[next];
+        next = (next + 1) % singleRows.length;
+        return engine.predictClass(row);
+    }
+
+    @Benchmark
+    public double[][] predictBatch() throws Exception {
+        return engine.predictBatch(batch);
+    }
+}
@@ -0,0 +1,126 @@
+package com.wekaproject;
+
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load generator for PredictionServer: each client sends one row per
+ * request, waits for the answer and sends the next, for a fixed duration. Rows are
+ * taken round-robin from an ARFF file with the training attributes. Prints the
+ * client-side throughput and latency percentiles, then the server's own /stats.
+ *
+ * Start a server first, e.g.
+ *
+ *     java -cp target/benchmarks.jar com.wekaproject.PredictionServer data.arff
+ *     java -cp target/benchmarks.jar com.wekaproject.PredictionLoadGenerator http://localhost:8080 data.arff --clients 64
+ */
+public class PredictionLoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: PredictionLoadGenerator <server-url> <rows.arff> [--clients 64] [--seconds 10]");
+            System.exit(1);
+        }
+        String baseUrl = args[0].replaceAll("/+$", "");
+        int clients = 64;
+        int seconds = 10;
+        for (int i = 2; i < args.length - 1; i += 2) {
+            if (args[i].equals("--clients")) {
+                clients = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--seconds")) {
+                seconds = Integer.parseInt(args[i + 1]);
+            }
+        }
+
+        Instances data = DataSource.read(args[1]);
+        String[] rows = new String[data.numInstances()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = data.instance(i).toString();
+        }
+
+        HttpClient http = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        URI predict = URI.create(baseUrl + "/predict");
+        AtomicLong nextRow = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+        long start = System.nanoTime();
+        List<Future<long[]>> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                results.add(pool.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    while (System.nanoTime() < deadline) {
+                        String row = rows[(int) (nextRow.getAndIncrement() % rows.length)];
+                        HttpRequest request = HttpRequest.newBuilder(predict)
+                            .POST(HttpRequest.BodyPublishers.ofString(row))
+                            .build();
+                        long sent = System.nanoTime();
+                        try {
+                            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                            if (response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                                continue;
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - sent;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }));
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long[] all = new long[0];
+        for (Future<long[]> result : results) {
+            long[] latencies = result.get();
+            int offset = all.length;
+            all = Arrays.copyOf(all, offset + latencies.length);
+            System.arraycopy(latencies, 0, all, offset, latencies.length);
+        }
+        Arrays.sort(all);
+
+        System.out.println(String.format(
+            "%d clients, %d requests in %.1f s: %.0f req/s, p50 %.3f ms, p99 %.3f ms, %d errors",
+            clients,
+            all.length,
+            elapsed,
+            all.length / elapsed,
+            percentile(all, 0.50) / 1e6,
+            percentile(all, 0.99) / 1e6,
+            errors.get()
+        ));
+        HttpResponse<String> stats = http.send(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/stats")).build(),
+            HttpResponse.BodyHandlers.ofString()
+        );
+        System.out.println("Server stats: " + stats.body());
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,95 @@
+package com.wekaproject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates reproducible ARFF datasets for the benchmarks. Every third attribute
+ * is nominal with three values, the rest are numeric; the three-valued class
+ * depends on a noisy linear score over the attributes, so the classifiers have
+ * something real to learn. The same rows, attributes and seed always give the same file.
+ */
+public class SyntheticDataset {
+    public static final long DEFAULT_SEED = 42;
+
+    /**
+     * Path of the generated dataset in the temp directory, writing it on first use
+     */
+    public static synchronized Path get(int rows, int attributes) throws IOException {
+        Path file = Path.of(System.getProperty("java.io.tmpdir"),
+            "wekaproject-synthetic-" + rows + "x" + attributes + "-" + DEFAULT_SEED + ".arff");
+        if (!Files.exists(file)) {
+            Path temp = Files.createTempFile(file.getParent(), "synthetic", ".tmp");
+            write(temp, rows, attributes, DEFAULT_SEED);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    public static void write(Path file, int rows, int attributes, long seed) throws IOException {
+        Random random = new Random(seed);
+        double[] weights = new double[attributes];
+        for (int a = 0; a < attributes; a++) {
+            weights[a] = random.nextGaussian();
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("@relation synthetic-" + rows + "x" + attributes);
+            writer.newLine();
+            writer.newLine();
+            for (int a = 0; a < attributes; a++) {
+                writer.write(isNominal(a)
+                    ? "@attribute a" + a + " {v0,v1,v2}"
+                    : "@attribute a" + a + " numeric");
+                writer.newLine();
+            }
+            writer.write("@attribute class {c0,c1,c2}");
+            writer.newLine();
+            writer.newLine();
+            writer.write("@data");
+            writer.newLine();
+
+            StringBuilder line = new StringBuilder();
+            for (int r = 0; r < rows; r++) {
+                line.setLength(0);
+                double score = 0;
+                for (int a = 0; a < attributes; a++) {
+                    if (isNominal(a)) {
+                        int value = random.nextInt(3);
+                        score += weights[a] * (value - 1);
+                        line.append('v').append(value);
+                    } else {
+                        double value = random.nextGaussian();
+                        score += weights[a] * value;
+                        line.append(String.format(Locale.ROOT, "%.4f", value));
+                    }
+                    line.append(',');
+                }
+                score += random.nextGaussian() * 0.5;
+                line.append(score < -0.5 ? "c0" : score > 0.5 ? "c2" : "c1");
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+    }
+
+    private static boolean isNominal(int attribute) {
+        return attribute % 3 == 2;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: SyntheticDataset <rows> <attributes> <output.arff> [seed]");
+            System.exit(1);
+        }
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+        write(Path.of(args[2]), Integer.parseInt(args[0]), Integer.parseInt(args[1]), seed);
+        System.out.println("Wrote " + args[2]);
+    }
+}
@@ -0,0 +1,93 @@
+package com.wekaproject;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.functions.Logistic;
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.classifiers.functions.SMO;
+import weka.classifiers.lazy.IBk;
+import weka.classifiers.trees.J48;
+import weka.classifiers.trees.RandomForest;
+import weka.classifiers.trees.RandomTree;
+
+/**
+ * The classification approaches compared by the engine, each paired with the
+ * data view it is trained on. Declaration order is the order results are reported in.
+ */
+public enum Approach {
+    // 1. Naive Bayes - uses discretized data (converts numeric to nominal)
+    NAIVE_BAYES("Naive Bayes", DataView.NOMINAL),
+    // 2. J48 (Decision Tree) with original data
+    J48("J48", DataView.ORIGINAL),
+    // 3. Random Forest with original data
+    RANDOM_FOREST("Random Forest", DataView.ORIGINAL),
+    // 4. Random Tree with original data
+    RANDOM_TREE("Random Tree", DataView.ORIGINAL),
+    // 5-7. IBk with K = 3, 5, 7 on normalized numeric data
+    IBK_3("IBk (K=3)", DataView.NUMERIC_NORMALIZED),
+    IBK_5("IBk (K=5)", DataView.NUMERIC_NORMALIZED),
+    IBK_7("IBk (K=7)", DataView.NUMERIC_NORMALIZED),
+    // 8. Logistic Regression
+    LOGISTIC("Logistic Regression", DataView.NUMERIC_NORMALIZED),
+    // 9. Multilayer Perceptron (ANN)
+    MULTILAYER_PERCEPTRON("Multilayer Perceptron", DataView.NUMERIC_NORMALIZED),
+    // 10. SVM (SMO)
+    SVM("SVM", DataView.NUMERIC_NORMALIZED);
+
+    private final String displayName;
+    private final DataView view;
+
+    Approach(String displayName, DataView view) {
+        this.displayName = displayName;
+        this.view = view;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public DataView getView() {
+        return view;
+    }
+
+    /**
+     * Create a new, untrained classifier configured for this approach
+     */
+    public Classifier createClassifier() {
+        switch (this) {
+            case NAIVE_BAYES:
+                return new NaiveBayes();
+            case J48:
+                return new J48();
+            case RANDOM_FOREST:
+                RandomForest rf = new RandomForest();
+                rf.setNumIterations(100);
+                return rf;
+            case RANDOM_TREE:
+                return new RandomTree();
+            case IBK_3:
+                return createIBk(3);
+            case IBK_5:
+                return createIBk(5);
+            case IBK_7:
+                return createIBk(7);
+            case LOGISTIC:
+                return new Logistic();
+            case MULTILAYER_PERCEPTRON:
+                MultilayerPerceptron mlp = new MultilayerPerceptron();
+                mlp.setLearningRate(0.3);
+                mlp.setMomentum(0.2);
+                mlp.setTrainingTime(500);
+                mlp.setHiddenLayers("a"); // Auto configure hidden layers
+                return mlp;
+            case SVM:
+                return new SMO();
+            default:
+                throw new IllegalStateException("Unknown approach: " + this);
+        }
+    }
+
+    private static IBk createIBk(int k) {
+        return new IndexedIBk(k);
+    }
+}
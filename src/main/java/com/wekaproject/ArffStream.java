@@ -0,0 +1,79 @@
+package com.wekaproject;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffLoader;
+
+import java.io.File;
+
+/**
+ * Streaming access to an ARFF file: the header is read once up front and rows are
+ * parsed one at a time with ArffLoader's incremental mode, so no pass ever holds
+ * more than the current row in memory.
+ */
+public class ArffStream {
+    private final String datasetPath;
+    private final Instances structure;
+    private int numInstances = -1;
+
+    /**
+     * Receives the rows of one pass over the stream
+     */
+    public interface RowConsumer {
+        void accept(Instance instance, int rowIndex) throws Exception;
+    }
+
+    public ArffStream(String datasetPath) throws Exception {
+        this.datasetPath = datasetPath;
+        this.structure = newLoader().getStructure();
+
+        // Set class index to last attribute if not set
+        if (structure.classIndex() == -1) {
+            structure.setClassIndex(structure.numAttributes() - 1);
+        }
+    }
+
+    private ArffLoader newLoader() throws Exception {
+        ArffLoader loader = new ArffLoader();
+        loader.setFile(new File(datasetPath));
+        return loader;
+    }
+
+    /**
+     * Header of the dataset, without rows
+     */
+    public Instances getStructure() {
+        return new Instances(structure, 0);
+    }
+
+    public int getNumAttributes() {
+        return structure.numAttributes();
+    }
+
+    /**
+     * Number of rows, counted with one streaming pass the first time it is asked for
+     */
+    public synchronized int getNumInstances() throws Exception {
+        if (numInstances < 0) {
+            int[] count = new int[1];
+            forEach((instance, rowIndex) -> count[0]++);
+            numInstances = count[0];
+        }
+        return numInstances;
+    }
+
+    /**
+     * Make one pass over all rows in file order
+     */
+    public void forEach(RowConsumer consumer) throws Exception {
+        ArffLoader loader = newLoader();
+        Instances header = loader.getStructure();
+        header.setClassIndex(structure.classIndex());
+
+        int rowIndex = 0;
+        Instance instance;
+        while ((instance = loader.getNextInstance(header)) != null) {
+            consumer.accept(instance, rowIndex++);
+        }
+    }
+}
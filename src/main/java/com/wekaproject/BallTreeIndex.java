@@ -0,0 +1,164 @@
+package com.wekaproject;
+
+import java.util.Arrays;
+
+/**
+ * Ball tree over the flat rows of a NeighbourIndex, for data with too many
+ * dimensions for a KD-tree to prune well. Each node splits its rows at the median
+ * of their projection on the line between two far apart rows and keeps a centre
+ * and radius. Radii are measured in raw coordinates; with the query's ranges the
+ * ball is at most (largest 1 / width) times as wide, which bounds the distance to
+ * any row inside it.
+ */
+public class BallTreeIndex extends NeighbourIndex {
+    private static final long serialVersionUID = 1L;
+
+    private int numNodes;
+    private int[] from;
+    private int[] to;
+    private int[] left;
+    private int[] right;
+    /** Centre of node n, dimension d, at centres[n * numDims + d] */
+    private double[] centres;
+    private double[] radii;
+
+    BallTreeIndex(double[] rows, int numRows, int[] attributes) {
+        super(rows, numRows, attributes);
+        int capacity = 4 * (numRows / LEAF_SIZE) + 4;
+        from = new int[capacity];
+        to = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        centres = new double[capacity * numDims];
+        radii = new double[capacity];
+        build(0, numRows, new double[numRows]);
+        trim();
+    }
+
+    private int build(int start, int end, double[] keys) {
+        int node = numNodes++;
+        from[node] = start;
+        to[node] = end;
+        left[node] = -1;
+        right[node] = -1;
+
+        int offset = node * numDims;
+        for (int i = start; i < end; i++) {
+            for (int d = 0; d < numDims; d++) {
+                centres[offset + d] += value(order[i], d);
+            }
+        }
+        for (int d = 0; d < numDims; d++) {
+            centres[offset + d] /= end - start;
+        }
+        double radius = 0;
+        for (int i = start; i < end; i++) {
+            radius = Math.max(radius, rawDistanceToCentre(order[i], offset));
+        }
+        radii[node] = Math.sqrt(radius);
+
+        if (end - start > LEAF_SIZE && radius > 0) {
+            // Two far apart rows: the farthest from the centre, then the farthest from that one
+            int a = farthestFrom(start, end, centres, offset);
+            double[] pointA = Arrays.copyOfRange(rows, a * numDims, (a + 1) * numDims);
+            int b = farthestFrom(start, end, pointA, 0);
+            for (int i = start; i < end; i++) {
+                int row = order[i];
+                double projection = 0;
+                for (int d = 0; d < numDims; d++) {
+                    projection += value(row, d) * (value(b, d) - pointA[d]);
+                }
+                keys[row] = projection;
+            }
+            int middle = (start + end) >>> 1;
+            select(start, end, middle, keys);
+            left[node] = build(start, middle, keys);
+            right[node] = build(middle, end, keys);
+        }
+        return node;
+    }
+
+    private int farthestFrom(int start, int end, double[] point, int pointOffset) {
+        int farthest = order[start];
+        double best = -1;
+        for (int i = start; i < end; i++) {
+            int row = order[i];
+            double sum = 0;
+            for (int d = 0; d < numDims; d++) {
+                double diff = value(row, d) - point[pointOffset + d];
+                sum += diff * diff;
+            }
+            if (sum > best) {
+                best = sum;
+                farthest = row;
+            }
+        }
+        return farthest;
+    }
+
+    private double rawDistanceToCentre(int row, int centreOffset) {
+        double sum = 0;
+        for (int d = 0; d < numDims; d++) {
+            double diff = value(row, d) - centres[centreOffset + d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    private void trim() {
+        from = Arrays.copyOf(from, numNodes);
+        to = Arrays.copyOf(to, numNodes);
+        left = Arrays.copyOf(left, numNodes);
+        right = Arrays.copyOf(right, numNodes);
+        centres = Arrays.copyOf(centres, numNodes * numDims);
+        radii = Arrays.copyOf(radii, numNodes);
+    }
+
+    @Override
+    protected void search(double[] query, double[] min, double[] width, Collector collector) {
+        double maxScale = 0;
+        for (int d = 0; d < numDims; d++) {
+            if (width[d] > 0) {
+                maxScale = Math.max(maxScale, 1 / width[d]);
+            }
+        }
+        search(0, query, min, width, maxScale, collector);
+    }
+
+    private void search(int node, double[] query, double[] min, double[] width, double maxScale,
+                        Collector collector) {
+        if (left[node] < 0) {
+            scan(from[node], to[node], query, min, width, collector);
+            return;
+        }
+        double leftBound = ballBound(left[node], query, width, maxScale);
+        double rightBound = ballBound(right[node], query, width, maxScale);
+        int near = leftBound <= rightBound ? left[node] : right[node];
+        int far = near == left[node] ? right[node] : left[node];
+
+        if (!collector.canSkip(Math.min(leftBound, rightBound))) {
+            search(near, query, min, width, maxScale, collector);
+        }
+        if (!collector.canSkip(Math.max(leftBound, rightBound))) {
+            search(far, query, min, width, maxScale, collector);
+        }
+    }
+
+    /**
+     * Squared lower bound on the normalized distance from the query to any row in the
+     * node: distance to the centre minus the scaled radius
+     */
+    private double ballBound(int node, double[] query, double[] width, double maxScale) {
+        int offset = node * numDims;
+        double sum = 0;
+        for (int d = 0; d < numDims; d++) {
+            if (!(width[d] > 0)) {
+                continue;
+            }
+            double scaled = (query[d] - centres[offset + d]) / width[d];
+            sum += scaled * scaled;
+        }
+        double gap = Math.sqrt(sum) - maxScale * radii[node];
+        return gap > 0 ? gap * gap : 0;
+    }
+}
@@ -0,0 +1,294 @@
+package com.wekaproject;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Headless entry point: runs the full comparison on many datasets and writes one
+ * leaderboard with every dataset's ranked results as CSV or JSON.
+ *
+ * Datasets run concurrently on a pool sized to the processors. Each one also
+ * reserves an estimate of its memory before it starts, so a few large files don't
+ * run the JVM out of heap; a dataset bigger than the whole budget runs alone.
+ * Nothing here touches AWT or Swing, and the JVM is put in headless mode first.
+ *
+ * With --search, approaches are tuned before they are compared (see
+ * ClassificationEngine.setParameterSearch). --space replaces the default space of
+ * one approach with Weka options whose values list alternatives, e.g.
+ * --space "RANDOM_FOREST=-I 100|300 -depth 0|20".
+ *
+ * With --streaming, datasets are never loaded whole: IncrementalEvaluator reads
+ * each file row by row and evaluates the updateable learners only. Each dataset
+ * then reserves just the minimum memory, however large its file.
+ *
+ * Usage: BatchCompare [--threads N] [--output leaderboard.csv|json] [--racing | --streaming]
+ *        [--search] [--max-configs N] [--space APPROACH=options]... &lt;file|directory|glob&gt;...
+ */
+public class BatchCompare {
+    private static final String USAGE =
+        "Usage: BatchCompare [--threads N] [--output leaderboard.csv|json] [--racing | --streaming]"
+            + " [--search] [--max-configs N] [--space APPROACH=options]... <file|directory|glob>...";
+
+    /** Heap needed per byte of ARFF file: the parsed data, the converted views and the fold copies */
+    private static final long MEMORY_PER_FILE_BYTE = 8;
+    private static final long MIN_DATASET_MEMORY = 32L << 20;
+
+    /** Folds of the streaming cross-validation */
+    private static final int STREAMING_FOLDS = 10;
+
+    /** Share of the maximum heap the running datasets may reserve together */
+    private static final double MEMORY_BUDGET_FRACTION = 0.75;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path output = Path.of("leaderboard.csv");
+        boolean racing = false;
+        boolean streaming = false;
+        boolean search = false;
+        int maxConfigurations = 0;
+        Map<Approach, ParameterSpace> spaces = new EnumMap<>(Approach.class);
+        List<String> patterns = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--output":
+                        output = Path.of(args[++i]);
+                        break;
+                    case "--racing":
+                        racing = true;
+                        break;
+                    case "--streaming":
+                        streaming = true;
+                        break;
+                    case "--search":
+                        search = true;
+                        break;
+                    case "--max-configs":
+                        maxConfigurations = Integer.parseInt(args[++i]);
+                        break;
+                    case "--space":
+                        String[] space = args[++i].split("=", 2);
+                        Approach approach = Approach.valueOf(space[0].trim());
+                        spaces.put(approach, ParameterSpace.parse(approach, space.length > 1 ? space[1] : ""));
+                        search = true;
+                        break;
+                    default:
+                        patterns.add(args[i]);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? USAGE : e.getMessage() + "\n" + USAGE);
+            System.exit(1);
+        }
+        if (patterns.isEmpty() || threads < 1) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        if (streaming && (racing || search)) {
+            System.err.println("--streaming can't be combined with --racing or --search\n" + USAGE);
+            System.exit(1);
+        }
+
+        try {
+            List<Path> datasets = expand(patterns);
+            if (datasets.isEmpty()) {
+                System.err.println("No datasets match " + String.join(" ", patterns));
+                System.exit(1);
+            }
+
+            long start = System.nanoTime();
+            Map<String, List<Result>> leaderboard = compareAll(datasets, threads, racing,
+                streaming, search ? spaces : null, maxConfigurations);
+            ResultExporter.exportLeaderboard(leaderboard, output);
+
+            long failed = leaderboard.values().stream().filter(BatchCompare::failed).count();
+            System.out.println(String.format(
+                "Compared %d datasets in %.2f s, leaderboard written to %s",
+                datasets.size(),
+                (System.nanoTime() - start) / 1e9,
+                output
+            ));
+            if (failed > 0) {
+                System.err.println(failed + " dataset(s) failed");
+                System.exit(1);
+            }
+        } catch (Exception e) {
+            System.err.println("Batch comparison failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run every dataset and collect its results, keyed by path in the given order.
+     * A dataset that can't be loaded gets a single failed result.
+     *
+     * @param streaming evaluate the updateable learners row by row instead of loading each dataset
+     * @param searchSpaces spaces replacing the defaults in a parameter search, or null for no search
+     * @param maxConfigurations most configurations searched per approach, 0 for whole grids
+     */
+    public static Map<String, List<Result>> compareAll(List<Path> datasets, int threads, boolean racing,
+                                                       boolean streaming,
+                                                       Map<Approach, ParameterSpace> searchSpaces,
+                                                       int maxConfigurations)
+            throws IOException, InterruptedException {
+        int poolSize = Math.min(threads, datasets.size());
+        int budgetMb = (int) Math.max(1, Runtime.getRuntime().maxMemory() * MEMORY_BUDGET_FRACTION / (1 << 20));
+        Semaphore memory = new Semaphore(budgetMb, true);
+
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+        Map<Path, Future<List<Result>>> futures = new LinkedHashMap<>();
+        try {
+            for (Path dataset : datasets) {
+                int neededMb = Math.min(budgetMb,
+                    streaming ? (int) (MIN_DATASET_MEMORY >> 20) : estimateMemoryMb(dataset));
+                // With one dataset at a time, its approaches and folds get the processors instead
+                boolean innerParallel = poolSize == 1;
+                futures.put(dataset, pool.submit(() -> {
+                    memory.acquire(neededMb);
+                    try {
+                        return streaming
+                            ? compareStreaming(dataset)
+                            : compare(dataset, innerParallel, racing, searchSpaces, maxConfigurations);
+                    } finally {
+                        memory.release(neededMb);
+                    }
+                }));
+            }
+
+            Map<String, List<Result>> leaderboard = new LinkedHashMap<>();
+            int done = 0;
+            for (Map.Entry<Path, Future<List<Result>>> entry : futures.entrySet()) {
+                String name = entry.getKey().toString();
+                List<Result> results;
+                try {
+                    results = entry.getValue().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    System.err.println("Error on " + name + ": " + cause.getMessage());
+                    Result failure = new Result("-", 0, 0, 0);
+                    failure.setStatus(Result.Status.FAILED);
+                    results = Collections.singletonList(failure);
+                }
+                leaderboard.put(name, results);
+                done++;
+                System.out.println(String.format("[%d/%d] %s: %s", done, futures.size(), name, summary(results)));
+            }
+            return leaderboard;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static List<Result> compare(Path dataset, boolean parallel, boolean racing,
+                                        Map<Approach, ParameterSpace> searchSpaces,
+                                        int maxConfigurations) throws Exception {
+        ClassificationEngine engine = new ClassificationEngine(dataset.toString());
+        engine.setParallel(parallel);
+        engine.setParallelFolds(parallel);
+        engine.setRacing(racing);
+        if (searchSpaces != null) {
+            engine.setParameterSearch(true);
+            engine.setMaxConfigurations(maxConfigurations);
+            searchSpaces.forEach(engine::setParameterSpace);
+        }
+        return new ArrayList<>(engine.runAllClassifications());
+    }
+
+    private static List<Result> compareStreaming(Path dataset) throws Exception {
+        IncrementalEvaluator evaluator = new IncrementalEvaluator(new ArffStream(dataset.toString()));
+        return new ArrayList<>(evaluator.runIncrementalClassifications(STREAMING_FOLDS));
+    }
+
+    private static int estimateMemoryMb(Path dataset) throws IOException {
+        long bytes = Math.max(MIN_DATASET_MEMORY, Files.size(dataset) * MEMORY_PER_FILE_BYTE);
+        return (int) Math.min(Integer.MAX_VALUE, bytes >> 20);
+    }
+
+    private static boolean failed(List<Result> results) {
+        return results.stream().noneMatch(r -> r.getStatus() == Result.Status.OK);
+    }
+
+    private static String summary(List<Result> results) {
+        Result best = null;
+        for (Result result : results) {
+            if (result.getStatus() == Result.Status.OK && (best == null || result.getAccuracy() > best.getAccuracy())) {
+                best = result;
+            }
+        }
+        return best == null
+            ? "no approach finished"
+            : String.format("best %s (%.2f%%)", best.getAlgorithmName(), best.getAccuracy());
+    }
+
+    /**
+     * Datasets named by the arguments: a file as is, a directory as all its .arff
+     * files, anything else as a glob such as data/*.arff. Duplicates are dropped.
+     */
+    static List<Path> expand(List<String> patterns) throws IOException {
+        TreeSet<Path> datasets = new TreeSet<>();
+        for (String pattern : patterns) {
+            Path path = Path.of(pattern);
+            if (Files.isRegularFile(path)) {
+                datasets.add(path.normalize());
+            } else if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(path, "*.arff")) {
+                    for (Path entry : entries) {
+                        datasets.add(entry.normalize());
+                    }
+                }
+            } else {
+                datasets.addAll(glob(pattern));
+            }
+        }
+        return new ArrayList<>(datasets);
+    }
+
+    private static List<Path> glob(String pattern) throws IOException {
+        // Walk from the deepest directory before the first wildcard
+        int wildcard = pattern.length();
+        for (char c : new char[]{'*', '?', '[', '{'}) {
+            int at = pattern.indexOf(c);
+            if (at >= 0) {
+                wildcard = Math.min(wildcard, at);
+            }
+        }
+        int slash = pattern.lastIndexOf('/', wildcard);
+        Path root = slash < 0 ? Path.of("") : Path.of(slash == 0 ? "/" : pattern.substring(0, slash));
+        if (!Files.isDirectory(root)) {
+            return Collections.emptyList();
+        }
+        String relative = slash < 0 ? pattern : pattern.substring(slash + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + relative);
+
+        List<Path> matches = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(Files::isRegularFile)
+                .filter(p -> matcher.matches(root.relativize(p)))
+                .forEach(p -> matches.add(p.normalize()));
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,46 @@
+package com.wekaproject;
+
+import java.nio.file.Path;
+
+/**
+ * Headless entry point: picks the best model for a training dataset, or restores
+ * the one saved by an earlier run, then scores a whole ARFF or CSV file with it
+ * and writes the predictions as CSV.
+ *
+ * Usage: BatchPredict &lt;training.arff&gt; &lt;input.arff|csv&gt; &lt;predictions.csv&gt;
+ */
+public class BatchPredict {
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: BatchPredict <training.arff> <input.arff|csv> <predictions.csv>");
+            System.exit(1);
+        }
+
+        try {
+            ClassificationEngine engine = new ClassificationEngine(args[0]);
+            // A model saved for the unchanged training data is used without retraining
+            if (!engine.loadSavedModel()) {
+                engine.setParallel(true);
+                engine.setParallelFolds(true);
+                engine.runAllClassifications();
+            }
+            System.out.println("Best Algorithm: " + engine.getBestAlgorithmName());
+
+            long start = System.nanoTime();
+            long rows = engine.predictFile(Path.of(args[1]), Path.of(args[2]));
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.println(String.format(
+                "Scored %d rows in %.2f s (%.0f rows/sec)",
+                rows,
+                seconds,
+                rows / Math.max(seconds, 1e-9)
+            ));
+        } catch (Exception e) {
+            System.err.println("Batch prediction failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
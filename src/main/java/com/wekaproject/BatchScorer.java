@@ -0,0 +1,273 @@
+package com.wekaproject;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.BatchPredictor;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializedObject;
+import weka.core.Utils;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Scores many rows with a trained model and its preprocessing pipeline.
+ * Rows are split into chunks that are classified on several threads, each with
+ * its own copy of the model, since Weka classifiers are not safe to share.
+ * Input rows are matched to the training attributes by name, so files only need
+ * the same columns, not the same header.
+ */
+public class BatchScorer {
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final Classifier model;
+    private final PreprocessingPipeline pipeline;
+    private final int threads;
+    private final int chunkSize;
+    private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+
+    public BatchScorer(Classifier model, PreprocessingPipeline pipeline, int threads, int chunkSize) {
+        this.model = model;
+        this.pipeline = pipeline;
+        this.threads = Math.max(1, threads);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Class distributions for every row, in row order
+     */
+    public double[][] score(Instances rows) throws Exception {
+        RowMapper mapper = new RowMapper(rows, pipeline.getInputHeader());
+        int numRows = rows.numInstances();
+        double[][] distributions = new double[numRows][];
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<double[][]>> chunks = new ArrayList<>();
+            for (int start = 0; start < numRows; start += chunkSize) {
+                int from = start;
+                int to = Math.min(numRows, start + chunkSize);
+                chunks.add(pool.submit(() -> {
+                    double[][] raw = new double[to - from][];
+                    for (int i = from; i < to; i++) {
+                        raw[i - from] = mapper.map(rows.instance(i));
+                    }
+                    return scoreChunk(raw);
+                }));
+            }
+
+            int offset = 0;
+            for (Future<double[][]> chunk : chunks) {
+                double[][] chunkDistributions = await(chunk);
+                System.arraycopy(chunkDistributions, 0, distributions, offset, chunkDistributions.length);
+                offset += chunkDistributions.length;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return distributions;
+    }
+
+    /**
+     * Stream an ARFF or CSV file through the model and write one CSV line per row:
+     * the predicted label followed by the probability of each class.
+     *
+     * @return number of rows scored
+     */
+    public long scoreFile(Path input, Path output) throws Exception {
+        DataSource source = new DataSource(input.toString());
+        Instances structure = source.getStructure();
+        RowMapper mapper = new RowMapper(structure, pipeline.getInputHeader());
+        Attribute classAttribute = pipeline.getOutputHeader().classAttribute();
+
+        // Bound the chunks in flight so memory stays flat however large the file is
+        int maxInFlight = threads * 2;
+        Deque<Future<double[][]>> inFlight = new ArrayDeque<>();
+        long rowCount = 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writer.write("predicted");
+            for (int c = 0; c < classAttribute.numValues(); c++) {
+                writer.write(',');
+                writer.write(csvField("p(" + classAttribute.value(c) + ")"));
+            }
+            writer.newLine();
+
+            List<double[]> pending = new ArrayList<>(chunkSize);
+            while (source.hasMoreElements(structure)) {
+                pending.add(mapper.map(source.nextElement(structure)));
+                if (pending.size() == chunkSize) {
+                    inFlight.add(submitChunk(pool, pending));
+                    pending = new ArrayList<>(chunkSize);
+                    if (inFlight.size() >= maxInFlight) {
+                        rowCount += writeChunk(writer, await(inFlight.poll()), classAttribute);
+                    }
+                }
+            }
+            if (!pending.isEmpty()) {
+                inFlight.add(submitChunk(pool, pending));
+            }
+            while (!inFlight.isEmpty()) {
+                rowCount += writeChunk(writer, await(inFlight.poll()), classAttribute);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return rowCount;
+    }
+
+    private Future<double[][]> submitChunk(ExecutorService pool, List<double[]> rows) {
+        double[][] raw = rows.toArray(new double[0][]);
+        return pool.submit(() -> scoreChunk(raw));
+    }
+
+    /**
+     * Class distributions for rows given as attribute values in original attribute
+     * order, as predictClass takes them. Runs on the calling thread.
+     */
+    public double[][] scoreValues(double[][] attributeValues) throws Exception {
+        return scoreChunk(attributeValues);
+    }
+
+    private double[][] scoreChunk(double[][] rawRows) throws Exception {
+        Worker worker = idleWorkers.poll();
+        if (worker == null) {
+            worker = new Worker(model, pipeline);
+        }
+        try {
+            return worker.distributions(rawRows);
+        } finally {
+            idleWorkers.add(worker);
+        }
+    }
+
+    private static int writeChunk(BufferedWriter writer, double[][] distributions,
+                                  Attribute classAttribute) throws Exception {
+        StringBuilder line = new StringBuilder();
+        for (double[] distribution : distributions) {
+            line.setLength(0);
+            int predicted = Utils.maxIndex(distribution);
+            boolean unclassified = Utils.sum(distribution) == 0;
+            line.append(unclassified ? "?" : csvField(classAttribute.value(predicted)));
+            for (double p : distribution) {
+                line.append(',').append(p);
+            }
+            writer.write(line.toString());
+            writer.newLine();
+        }
+        return distributions.length;
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        }
+    }
+
+    /**
+     * A private copy of the model and pipeline, used by one thread at a time
+     */
+    private static class Worker {
+        private final Classifier model;
+        private final PreprocessingPipeline pipeline;
+
+        Worker(Classifier model, PreprocessingPipeline pipeline) throws Exception {
+            // A compiled tree model is read-only and can be shared
+            this.model = model instanceof CompiledTreeModel ? model : AbstractClassifier.makeCopy(model);
+            this.pipeline = (PreprocessingPipeline) new SerializedObject(pipeline).getObject();
+        }
+
+        double[][] distributions(double[][] rawRows) throws Exception {
+            Instance[] rows = new Instance[rawRows.length];
+            for (int i = 0; i < rawRows.length; i++) {
+                rows[i] = pipeline.transform(pipeline.createInput(rawRows[i]));
+            }
+
+            if (model instanceof BatchPredictor
+                && ((BatchPredictor) model).implementsMoreEfficientBatchPrediction()) {
+                Instances batch = new Instances(pipeline.getOutputHeader(), rows.length);
+                for (Instance row : rows) {
+                    batch.add(row);
+                }
+                return ((BatchPredictor) model).distributionsForInstances(batch);
+            }
+
+            double[][] distributions = new double[rows.length][];
+            for (int i = 0; i < rows.length; i++) {
+                distributions[i] = model.distributionForInstance(rows[i]);
+            }
+            return distributions;
+        }
+    }
+
+    /**
+     * Maps rows of an arbitrary header onto the training attributes by name.
+     * Nominal values are matched by label; unknown labels and absent columns become missing.
+     */
+    private static class RowMapper {
+        private final Instances source;
+        private final Instances target;
+        private final int[] sourceIndex;
+
+        RowMapper(Instances source, Instances target) {
+            this.source = source;
+            this.target = target;
+            this.sourceIndex = new int[target.numAttributes()];
+            for (int i = 0; i < target.numAttributes(); i++) {
+                Attribute attribute = i == target.classIndex() ? null : source.attribute(target.attribute(i).name());
+                sourceIndex[i] = attribute == null ? -1 : attribute.index();
+            }
+        }
+
+        double[] map(Instance row) {
+            double[] values = new double[target.numAttributes()];
+            for (int i = 0; i < values.length; i++) {
+                int j = sourceIndex[i];
+                if (j < 0 || row.isMissing(j)) {
+                    values[i] = Utils.missingValue();
+                } else if (target.attribute(i).isNominal()) {
+                    int index = target.attribute(i).indexOfValue(row.stringValue(j));
+                    values[i] = index < 0 ? Utils.missingValue() : index;
+                } else if (source.attribute(j).isNumeric()) {
+                    values[i] = row.value(j);
+                } else {
+                    values[i] = parseNumber(row.stringValue(j));
+                }
+            }
+            return values;
+        }
+
+        private static double parseNumber(String text) {
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                return Utils.missingValue();
+            }
+        }
+    }
+}
@@ -1,43 +1,322 @@
 package com.wekaproject;
 
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
-import weka.classifiers.bayes.NaiveBayes;
-import weka.classifiers.functions.Logistic;
-import weka.classifiers.functions.MultilayerPerceptron;
-import weka.classifiers.functions.SMO;
 import weka.classifiers.lazy.IBk;
-import weka.classifiers.trees.J48;
-import weka.classifiers.trees.RandomForest;
-import weka.classifiers.trees.RandomTree;
+import weka.core.Attribute;
+import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.Utils;
+import weka.core.Version;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClassificationEngine {
+    private final String datasetPath;
+    // Parsed header for loading the data later, or null
+    private final DatasetInspector inspector;
+    // Null until first needed in an engine restored from a saved model
     private DataProcessor dataProcessor;
     private List<Result> results;
     private ProgressListener progressListener;
     private Classifier bestClassifier;
-    private Instances bestClassifierInstances;
+    // What predictions run on: the compiled form of bestClassifier if it has one, else bestClassifier itself
+    private Classifier predictionModel;
+    private PreprocessingPipeline bestPipeline;
+    private BatchScorer batchScorer;
+    private ConcurrentPredictor predictor;
     private String bestAlgorithmName;
     private boolean isTrained = false;
+    private boolean parallel = false;
+    private ExecutorService executor;
+    private boolean parallelFolds = false;
+    private ExecutorService foldExecutor;
+    private CrossValidator crossValidator = new CrossValidator(null);
+    // Pool the folds of the current run go to, or null to run them on the approach's thread
+    private ExecutorService runFoldPool;
+    private boolean speculativeTraining = true;
+    private final Map<Approach, ApproachEntry> registry = new EnumMap<>(Approach.class);
+    private ApproachEntry leader;
+    private ExecutorService speculativePool;
+    private Duration timeBudget;
+    private Duration approachTimeBudget;
+    private final Map<Approach, Duration> approachTimeBudgets = new EnumMap<>(Approach.class);
+    private volatile boolean cancelRequested;
+    // Whether runAllClassifications is in progress; guarded by this
+    private boolean running;
+    private volatile Run currentRun;
+    private long deadlineNanos;
+    private final AtomicInteger approachesFinished = new AtomicInteger();
+    private int approachCount;
+    private boolean racing = false;
+    private boolean multiKEvaluation = true;
+    private double racingSignificance = Racing.DEFAULT_SIGNIFICANCE;
+    private RaceReport lastRaceReport;
+    private boolean parallelTreeVote = false;
+    private int ensembleSize = 1;
+    private EnsembleModel.Combination ensembleCombination = EnsembleModel.Combination.WEIGHTED_VOTE;
+    private boolean parameterSearch = false;
+    private int maxConfigurations = 0;
+    private final Map<Approach, ParameterSpace> parameterSpaces = new EnumMap<>(Approach.class);
+
+    // Set -Dwekaproject.modelStore=false to neither save nor load trained models
+    private static final boolean USE_MODEL_STORE =
+        Boolean.parseBoolean(System.getProperty("wekaproject.modelStore", "true"));
+
+    // Set -Dwekaproject.evaluationCache=false to evaluate every approach on every run
+    private static final boolean USE_EVALUATION_CACHE =
+        Boolean.parseBoolean(System.getProperty("wekaproject.evaluationCache", "true"));
+
+    // Set -Dwekaproject.compiledTrees=false to predict with Weka's tree objects instead of compiled trees
+    private static final boolean USE_COMPILED_TREES =
+        Boolean.parseBoolean(System.getProperty("wekaproject.compiledTrees", "true"));
+
+    // Cross-validation setup shared by all approaches; part of the evaluation cache key
+    private static final int NUM_FOLDS = 10;
+    private static final long FOLD_SEED = 1;
+
+    private EvaluationCache evaluationCache = USE_EVALUATION_CACHE
+        ? new EvaluationCache(EvaluationCache.defaultDirectory(), EvaluationCache.DEFAULT_MAX_BYTES)
+        : null;
 
     public interface ProgressListener {
         void onProgress(int percentage);
+
+        /**
+         * Called each time an approach finishes, with the number of finished approaches so far
+         */
+        default void onApproachCompleted(String algorithmName, int completed, int total) {
+        }
     }
 
     public ClassificationEngine(String datasetPath) throws Exception {
-        this.dataProcessor = new DataProcessor(datasetPath);
+        this(datasetPath, null, new DataProcessor(datasetPath));
+    }
+
+    /**
+     * Create an engine for a dataset whose header was already parsed by the inspector
+     */
+    public ClassificationEngine(DatasetInspector inspector) throws Exception {
+        this(inspector.getDatasetPath(), inspector, new DataProcessor(inspector));
+    }
+
+    private ClassificationEngine(String datasetPath, DatasetInspector inspector, DataProcessor dataProcessor) {
+        this.datasetPath = datasetPath;
+        this.inspector = inspector;
+        this.dataProcessor = dataProcessor;
         this.results = new ArrayList<>();
     }
 
+    /**
+     * Engine for the model an earlier run saved for this dataset, restored from the
+     * model file alone. The dataset itself is only loaded once something needs its
+     * rows, through getDataProcessor or a new run.
+     *
+     * @return the trained engine, or null if there is no saved model that fits its settings
+     */
+    public static ClassificationEngine fromSavedModel(DatasetInspector inspector) {
+        ClassificationEngine engine = new ClassificationEngine(inspector.getDatasetPath(), inspector, null);
+        return engine.loadSavedModel() ? engine : null;
+    }
+
     public void setProgressListener(ProgressListener listener) {
         this.progressListener = listener;
     }
 
+    /**
+     * Run the approaches concurrently instead of one after another
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Executor used in parallel mode. When not set, a pool sized to the
+     * available processors is created for each run and shut down afterwards.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Train and test the cross-validation folds of each approach concurrently
+     */
+    public void setParallelFolds(boolean parallelFolds) {
+        this.parallelFolds = parallelFolds;
+    }
+
+    /**
+     * Executor used for the folds in parallel fold mode. It must not be the approach
+     * executor, since approach tasks block while waiting for their folds.
+     */
+    public void setFoldExecutor(ExecutorService foldExecutor) {
+        this.foldExecutor = foldExecutor;
+    }
+
+    /**
+     * Build the full-data model of the current leader in the background while the
+     * remaining approaches are still being evaluated
+     */
+    public void setSpeculativeTraining(boolean speculativeTraining) {
+        this.speculativeTraining = speculativeTraining;
+    }
+
+    /**
+     * Cache that serves results of approaches evaluated before with the same data
+     * and configuration, or null to evaluate everything
+     */
+    public void setEvaluationCache(EvaluationCache evaluationCache) {
+        this.evaluationCache = evaluationCache;
+    }
+
+    /**
+     * Let a compiled random forest run its trees in parallel for every prediction.
+     * Takes effect the next time the best model is trained or loaded.
+     */
+    public void setParallelTreeVote(boolean parallelTreeVote) {
+        this.parallelTreeVote = parallelTreeVote;
+    }
+
+    /**
+     * Predict with the N most accurate approaches together instead of the best one
+     * alone (see EnsembleModel). The members are trained in parallel after the
+     * comparison; 1 turns ensembles off.
+     */
+    public void setEnsembleSize(int ensembleSize) {
+        this.ensembleSize = Math.max(1, ensembleSize);
+    }
+
+    /**
+     * How an ensemble combines its members: a vote weighted by accuracy, or stacking,
+     * which costs one more cross-validation of every member to train the combiner
+     */
+    public void setEnsembleCombination(EnsembleModel.Combination ensembleCombination) {
+        this.ensembleCombination = ensembleCombination;
+    }
+
+    /**
+     * Tune the approaches before comparing them: every approach with a parameter
+     * space (see ParameterSpace.defaultFor) has its configurations cross-validated
+     * on the shared folds, in parallel with parallel folds on, poor ones dropped
+     * early, and enters the comparison with its best configuration. Searched
+     * approaches bypass the evaluation cache and racing, but not the time budgets.
+     */
+    public void setParameterSearch(boolean parameterSearch) {
+        this.parameterSearch = parameterSearch;
+    }
+
+    /**
+     * Search at most this many configurations per approach, drawn at random from
+     * larger grids; 0 searches every grid in full
+     */
+    public void setMaxConfigurations(int maxConfigurations) {
+        this.maxConfigurations = Math.max(0, maxConfigurations);
+    }
+
+    /**
+     * Search the given space for an approach instead of its default one
+     */
+    public void setParameterSpace(Approach approach, ParameterSpace space) {
+        parameterSpaces.put(approach, space);
+    }
+
+    /**
+     * Evaluate IBk approaches that differ only in K in one pass, sharing the
+     * neighbour queries (see MultiKIBk). The results are the same either way.
+     */
+    public void setMultiKEvaluation(boolean multiKEvaluation) {
+        this.multiKEvaluation = multiKEvaluation;
+    }
+
+    /**
+     * Race the approaches on growing stratified samples and drop those that are
+     * significantly worse than the leader before they get the full data. The
+     * survivors get the same full cross-validation as without racing.
+     */
+    public void setRacing(boolean racing) {
+        this.racing = racing;
+    }
+
+    /**
+     * One-sided significance level at which racing drops an approach
+     */
+    public void setRacingSignificance(double racingSignificance) {
+        this.racingSignificance = racingSignificance;
+    }
+
+    /**
+     * Rounds and savings of the last racing run, or null if the last run did not race
+     */
+    public RaceReport getLastRaceReport() {
+        return lastRaceReport;
+    }
+
+    /**
+     * Wall-clock limit for evaluating all approaches, or null for no limit. Approaches
+     * still running when it expires are stopped and reported as timed out.
+     */
+    public void setTimeBudget(Duration timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Limit for the evaluation of each single approach, counted from when it starts, or null for no limit
+     */
+    public void setApproachTimeBudget(Duration approachTimeBudget) {
+        this.approachTimeBudget = approachTimeBudget;
+    }
+
+    /**
+     * Limit for one approach, overriding the common per-approach limit. Null removes the override.
+     */
+    public void setApproachTimeBudget(Approach approach, Duration budget) {
+        if (budget == null) {
+            approachTimeBudgets.remove(approach);
+        } else {
+            approachTimeBudgets.put(approach, budget);
+        }
+    }
+
+    private Duration getApproachTimeBudget(Approach approach) {
+        return approachTimeBudgets.getOrDefault(approach, approachTimeBudget);
+    }
+
+    /**
+     * Stop the current run. Approaches that have not finished are reported as
+     * cancelled and no final model is trained. Does nothing if no run is in progress.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            cancelRequested = true;
+        }
+        Run run = currentRun;
+        if (run != null) {
+            stopAll(run, Result.Status.CANCELLED);
+        }
+    }
+
     private void updateProgress(int current, int total) {
         if (progressListener != null) {
             int percentage = (int) ((current / (double) total) * 100);
@@ -45,96 +324,211 @@ public class ClassificationEngine {
         }
     }
 
+    /**
+     * Record the result of an approach. Only the first result counts: an approach
+     * that was stopped may still finish its work later, and that result is dropped.
+     */
+    private boolean finishApproach(Run run, ApproachEntry entry, Result result) {
+        // Serialize the count and the callback so listeners never see counts go backwards
+        synchronized (run) {
+            if (entry.result != null) {
+                return false;
+            }
+            entry.result = result;
+            if (entry.holdsSlot) {
+                entry.holdsSlot = false;
+                run.slots.release();
+            }
+            int current = run.completed.incrementAndGet();
+            if (run.finalRound || result.getStatus() != Result.Status.OK) {
+                reportFinished(entry.approach);
+            }
+            updateProgress(run.progressFrom + (run.progressTo - run.progressFrom) * current / run.tasks.size(), 100);
+
+            if (run.finalRound && result.getStatus() == Result.Status.OK && isBetter(entry, leader)) {
+                leader = entry;
+                if (speculativeTraining && result.getCorrectlyClassified() > 0) {
+                    startFullModelBuild(entry);
+                }
+            }
+        }
+        run.remaining.countDown();
+
+        if (run.finalRound && result.getStatus() == Result.Status.OK && evaluationCache != null && entry.cacheKey != null) {
+            try {
+                evaluationCache.put(entry.cacheKey, result);
+            } catch (Exception e) {
+                System.err.println("Could not cache result of " + entry.approach.getDisplayName() + ": " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tell the listener an approach is out of the run for good, counting across racing rounds
+     */
+    private void reportFinished(Approach approach) {
+        int finished = approachesFinished.incrementAndGet();
+        if (progressListener != null) {
+            progressListener.onApproachCompleted(approach.getDisplayName(), finished, approachCount);
+        }
+    }
+
+    /**
+     * Give up on an approach: record it with the given status and interrupt its task.
+     * Weka checks for interruption only in a few places, so a model build that
+     * ignores it keeps its thread busy until it ends, but its result is discarded.
+     */
+    private void stopApproach(Run run, ApproachEntry entry, Result.Status status) {
+        Result stopped = new Result(entry.approach.getDisplayName(), 0.0, 0, entry.data.numInstances());
+        stopped.setStatus(status);
+        if (finishApproach(run, entry, stopped)) {
+            Future<?> task = entry.task;
+            if (task != null) {
+                task.cancel(true);
+            }
+            System.out.println(entry.approach.getDisplayName() + ": " + status);
+            // Approaches evaluated in the same pass go down with it
+            for (ApproachEntry follower : entry.followers) {
+                stopApproach(run, follower, status);
+            }
+        }
+    }
+
+    private void stopAll(Run run, Result.Status status) {
+        for (ApproachEntry entry : run.tasks) {
+            stopApproach(run, entry, status);
+        }
+    }
+
+    /**
+     * Same rule as the final pick: higher accuracy wins, ties go to the earlier approach
+     */
+    private static boolean isBetter(ApproachEntry candidate, ApproachEntry current) {
+        if (current == null) {
+            return true;
+        }
+        double a = candidate.result.getAccuracy();
+        double b = current.result.getAccuracy();
+        return a > b || (a == b && candidate.approach.ordinal() < current.approach.ordinal());
+    }
+
+    private void startFullModelBuild(ApproachEntry entry) {
+        if (speculativePool == null) {
+            // A cancelled build may keep its thread until the classifier returns, so the
+            // second thread lets the new leader start meanwhile; further leaders queue
+            // instead of piling up threads
+            speculativePool = Executors.newFixedThreadPool(2, daemonThreads("speculative-build"));
+        }
+        // The previous leader's model is no longer needed
+        for (ApproachEntry other : registry.values()) {
+            if (other != entry && other.fullModel != null) {
+                other.fullModel.cancel(true);
+                other.fullModel = null;
+            }
+        }
+        entry.fullModel = speculativePool.submit(entry::buildFullModel);
+    }
+
     public List<Result> runAllClassifications() throws Exception {
+        synchronized (this) {
+            running = true;
+            cancelRequested = false;
+        }
+        try {
+            return runAll();
+        } finally {
+            // A cancel only ever applies to the run it was made during
+            synchronized (this) {
+                running = false;
+                cancelRequested = false;
+            }
+        }
+    }
+
+    private List<Result> runAll() throws Exception {
+        getDataProcessor();
         results.clear();
-        int totalApproaches = 10;
-        int currentApproach = 0;
+
+        Map<DataView, Instances> views = new EnumMap<>(DataView.class);
 
         // Get original data
-        Instances originalData = dataProcessor.getOriginalData();
-        
+        views.put(DataView.ORIGINAL, dataProcessor.getOriginalData());
+
         // Prepare different data formats
-        Instances nominalData = null;
-        Instances numericNormalizedData = null;
-        
         try {
-            nominalData = dataProcessor.numericToNominal();
+            views.put(DataView.NOMINAL, dataProcessor.numericToNominal());
         } catch (Exception e) {
             System.out.println("Could not create nominal data: " + e.getMessage());
         }
         
         try {
-            numericNormalizedData = dataProcessor.toNumericNormalized();
+            views.put(DataView.NUMERIC_NORMALIZED, dataProcessor.toNumericNormalized());
         } catch (Exception e) {
             System.out.println("Could not create numeric normalized data: " + e.getMessage());
         }
 
-        // 1. Naive Bayes - uses discretized data (converts numeric to nominal)
-        if (nominalData != null) {
-            currentApproach++;
-            updateProgress(currentApproach, totalApproaches);
-            runClassifier(new NaiveBayes(), nominalData, "Naive Bayes");
-        }
-
-        // 2. J48 (Decision Tree) with original data
-        currentApproach++;
-        updateProgress(currentApproach, totalApproaches);
-        runClassifier(new J48(), originalData, "J48");
-
-        // 3. Random Forest with original data
-        currentApproach++;
-        updateProgress(currentApproach, totalApproaches);
-        RandomForest rf = new RandomForest();
-        rf.setNumIterations(100);
-        runClassifier(rf, originalData, "Random Forest");
-
-        // 4. Random Tree with original data
-        currentApproach++;
-        updateProgress(currentApproach, totalApproaches);
-        runClassifier(new RandomTree(), originalData, "Random Tree");
-
-        // For numeric algorithms, we need normalized numeric data
-        if (numericNormalizedData != null) {
-            // 5. IBk (K=3)
-            currentApproach++;
-            updateProgress(currentApproach, totalApproaches);
-            IBk ibk3 = new IBk();
-            ibk3.setKNN(3);
-            runClassifier(ibk3, numericNormalizedData, "IBk (K=3)");
-
-            // 6. IBk (K=5)
-            currentApproach++;
-            updateProgress(currentApproach, totalApproaches);
-            IBk ibk5 = new IBk();
-            ibk5.setKNN(5);
-            runClassifier(ibk5, numericNormalizedData, "IBk (K=5)");
-
-            // 7. IBk (K=7)
-            currentApproach++;
-            updateProgress(currentApproach, totalApproaches);
-            IBk ibk7 = new IBk();
-            ibk7.setKNN(7);
-            runClassifier(ibk7, numericNormalizedData, "IBk (K=7)");
-
-            // 8. Logistic Regression
-            currentApproach++;
-            updateProgress(currentApproach, totalApproaches);
-            runClassifier(new Logistic(), numericNormalizedData, "Logistic Regression");
-
-            // 9. Multilayer Perceptron (ANN)
-            currentApproach++;
-            updateProgress(currentApproach, totalApproaches);
-            MultilayerPerceptron mlp = new MultilayerPerceptron();
-            mlp.setLearningRate(0.3);
-            mlp.setMomentum(0.2);
-            mlp.setTrainingTime(500);
-            mlp.setHiddenLayers("a"); // Auto configure hidden layers
-            runClassifier(mlp, numericNormalizedData, "Multilayer Perceptron");
-
-            // 10. SVM (SMO)
-            currentApproach++;
-            updateProgress(currentApproach, totalApproaches);
-            runClassifier(new SMO(), numericNormalizedData, "SVM");
+        // Register every approach whose data view is available, with its configured
+        // prototype, so the final model can be built without redoing any of this
+        discardSpeculativeBuilds();
+        registry.clear();
+        leader = null;
+        // The folds depend only on the rows and their classes, which every view shares
+        FoldPlan folds = FoldPlan.create(dataProcessor.getOriginalData(), NUM_FOLDS, new Random(FOLD_SEED));
+        for (Approach approach : Approach.values()) {
+            Instances data = views.get(approach.getView());
+            if (data != null) {
+                registry.put(approach, new ApproachEntry(approach, approach.createClassifier(), data, folds));
+            }
+        }
+        List<ApproachEntry> tasks = new ArrayList<>(registry.values());
+        approachesFinished.set(0);
+        approachCount = tasks.size();
+        deadlineNanos = timeBudget == null ? 0 : System.nanoTime() + timeBudget.toNanos();
+        lastRaceReport = null;
+        // Approaches with a parameter space are searched, and bypass the cache and racing
+        List<ApproachEntry> searched = new ArrayList<>();
+        List<ApproachEntry> unsearched = new ArrayList<>();
+        for (ApproachEntry entry : tasks) {
+            entry.space = parameterSearch ? spaceFor(entry.approach) : null;
+            (entry.space != null ? searched : unsearched).add(entry);
+        }
+        int searchProgress = 100 * searched.size() / Math.max(1, tasks.size());
+        List<ApproachEntry> pending = takeCachedResults(unsearched);
+
+        ExecutorService foldPool = null;
+        boolean ownsFoldPool = false;
+        if (parallelFolds) {
+            foldPool = foldExecutor;
+            if (foldPool == null) {
+                foldPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    daemonThreads("classification-fold"));
+                ownsFoldPool = true;
+            }
+        }
+        crossValidator = new CrossValidator(foldPool);
+        runFoldPool = foldPool;
+
+        try {
+            if (!searched.isEmpty()) {
+                runApproaches(searched, true, 0, searchProgress);
+            }
+            if (racing) {
+                race(pending, searchProgress, 100);
+            } else {
+                runApproaches(pending, true, searchProgress, 100);
+            }
+        } finally {
+            runFoldPool = null;
+            if (ownsFoldPool) {
+                foldPool.shutdownNow();
+            }
+        }
+
+        // Each task fills only its own entry, so results keep the approach order
+        // no matter which task finishes first
+        for (ApproachEntry entry : tasks) {
+            results.add(entry.result);
         }
 
         updateProgress(100, 100);
@@ -145,105 +539,654 @@ public class ClassificationEngine {
         return results;
     }
 
+    /**
+     * Search the parameter space of an approach, with the folds of all its
+     * configurations on the run's fold pool. The approach keeps the prototype of its
+     * best configuration. Runs as the approach's task, so a cancel, the time budget
+     * and the approach's own budget interrupt it like any cross-validation.
+     */
+    private Result searchApproach(ApproachEntry entry) {
+        String name = entry.approach.getDisplayName();
+        try {
+            ParameterSearch search = new ParameterSearch(runFoldPool, racingSignificance);
+            if (timeBudget != null) {
+                search.setDeadline(deadlineNanos);
+            }
+            List<String> configurations = entry.space.configurations(maxConfigurations, new Random(FOLD_SEED));
+            List<ParameterSearch.Trial> trials = search.search(entry.space, configurations, entry.data, entry.folds);
+            ParameterSearch.Trial best = trials.get(0);
+            int dropped = 0;
+            for (ParameterSearch.Trial trial : trials) {
+                if (trial.getStatus() == Result.Status.ELIMINATED) {
+                    dropped++;
+                }
+            }
+            System.out.println(String.format("%s: searched %d configurations, %d dropped early",
+                name, trials.size(), dropped));
+
+            if (best.getStatus() != Result.Status.OK) {
+                Result failed = new Result(name, 0.0, 0, entry.data.numInstances());
+                failed.setStatus(Result.Status.FAILED);
+                return failed;
+            }
+            entry.prototype = best.getPrototype();
+            return createResult(best.getName(), best.getEvaluation(), best.getFoldMetrics(), entry.data);
+        } catch (Exception e) {
+            if (timeBudget != null && System.nanoTime() - deadlineNanos >= 0) {
+                Result timedOut = new Result(name, 0.0, 0, entry.data.numInstances());
+                timedOut.setStatus(Result.Status.TIMED_OUT);
+                return timedOut;
+            }
+            return stoppedOrFailed(name, e, entry.data);
+        }
+    }
+
+    private ParameterSpace spaceFor(Approach approach) {
+        ParameterSpace space = parameterSpaces.get(approach);
+        return space != null ? space : ParameterSpace.defaultFor(approach);
+    }
+
+    /**
+     * Fill in the results the evaluation cache has for the given approaches
+     *
+     * @return the approaches that still need to be evaluated
+     */
+    private List<ApproachEntry> takeCachedResults(List<ApproachEntry> tasks) {
+        if (evaluationCache == null) {
+            return tasks;
+        }
+        List<ApproachEntry> pending = new ArrayList<>();
+        for (ApproachEntry entry : tasks) {
+            try {
+                entry.cacheKey = cacheKey(entry);
+                Result cached = evaluationCache.get(entry.cacheKey);
+                if (cached != null) {
+                    cached.setCached(true);
+                    entry.result = cached;
+                    reportFinished(entry.approach);
+                    if (isBetter(entry, leader)) {
+                        leader = entry;
+                    }
+                    continue;
+                }
+            } catch (Exception e) {
+                System.err.println("Ignoring evaluation cache for " + entry.approach.getDisplayName() + ": " + e.getMessage());
+            }
+            pending.add(entry);
+        }
+        if (leader != null && speculativeTraining && leader.result.getCorrectlyClassified() > 0) {
+            startFullModelBuild(leader);
+        }
+        return pending;
+    }
+
+    /**
+     * Everything a cross-validation result depends on: the dataset contents, the
+     * view, the classifier and its options, and the folds
+     */
+    private String cacheKey(ApproachEntry entry) throws Exception {
+        Classifier prototype = entry.prototype;
+        String options = prototype instanceof OptionHandler
+            ? Utils.joinOptions(((OptionHandler) prototype).getOptions())
+            : "";
+        return String.join("|",
+            "weka " + Version.VERSION,
+            dataProcessor.getFingerprint().getContentHash(),
+            entry.approach.getView().name(),
+            prototype.getClass().getName(),
+            options,
+            "folds " + NUM_FOLDS,
+            "seed " + FOLD_SEED
+        );
+    }
+
+    /**
+     * Racing: evaluate every approach on nested stratified samples of growing size,
+     * drop the ones that are significantly worse than the round's leader on paired
+     * fold accuracies, then give the survivors full cross-validation. The rounds use
+     * fewer folds than the final one and end early when they stop paying off (see Racing).
+     *
+     * @param progressFrom progress percentage when the race starts
+     * @param progressTo progress percentage when the survivors are evaluated
+     */
+    private void race(List<ApproachEntry> tasks, int progressFrom, int progressTo) throws Exception {
+        long start = System.nanoTime();
+        RaceReport report = new RaceReport();
+        Instances original = dataProcessor.getOriginalData();
+        int numRows = original.numInstances();
+        Racing sampler = new Racing(original, 1);
+        List<Integer> sizes = Racing.roundSizes(numRows);
+        int rounds = sizes.size() + 1;
+
+        List<ApproachEntry> alive = new ArrayList<>(tasks);
+        for (int r = 0; r < sizes.size() && alive.size() > 1; r++) {
+            int[] rows = sampler.sample(sizes.get(r));
+            Map<DataView, Instances> samples = new EnumMap<>(DataView.class);
+            for (ApproachEntry entry : alive) {
+                samples.computeIfAbsent(entry.approach.getView(), v -> Racing.subset(entry.data, rows));
+            }
+            FoldPlan folds = FoldPlan.create(samples.values().iterator().next(), Racing.ROUND_FOLDS,
+                new Random(FOLD_SEED));
+            List<ApproachEntry> round = new ArrayList<>();
+            for (ApproachEntry entry : alive) {
+                round.add(new ApproachEntry(entry.approach, entry.prototype, samples.get(entry.approach.getView()), folds));
+            }
+            runApproaches(round, false, progressFrom + (progressTo - progressFrom) * r / rounds,
+                progressFrom + (progressTo - progressFrom) * (r + 1) / rounds);
+
+            ApproachEntry roundLeader = null;
+            for (ApproachEntry candidate : round) {
+                if (candidate.result.getStatus() == Result.Status.OK && isBetter(candidate, roundLeader)) {
+                    roundLeader = candidate;
+                }
+            }
+
+            List<String> dropped = new ArrayList<>();
+            for (ApproachEntry candidate : round) {
+                ApproachEntry entry = registry.get(candidate.approach);
+                Result result = candidate.result;
+                boolean eliminated = result.getStatus() == Result.Status.OK && candidate != roundLeader
+                    && Racing.significantlyWorse(roundLeader.result.getFoldAccuracies(),
+                        result.getFoldAccuracies(), racingSignificance);
+                if (eliminated) {
+                    result.setStatus(Result.Status.ELIMINATED);
+                    reportFinished(candidate.approach);
+                    dropped.add(candidate.approach.getDisplayName());
+                    // Scale the measured work to full cross-validation to estimate what was saved
+                    report.addWork(0, Racing.fullWorkMillis(result.getTrainingTimeMillis(),
+                        result.getEvaluationTimeMillis(), rows.length, numRows, NUM_FOLDS));
+                }
+                if (result.getStatus() != Result.Status.OK) {
+                    // Out of the race, whether eliminated, timed out, cancelled or failed
+                    entry.result = result;
+                    alive.remove(entry);
+                }
+                report.addWork(result.getTrainingTimeMillis() + result.getEvaluationTimeMillis(), 0);
+            }
+            report.addRound(rows.length, round.size(), dropped);
+            if (!Racing.keepRacing(round.size(), dropped.size())) {
+                break;
+            }
+        }
+
+        runApproaches(alive, true, progressFrom + (progressTo - progressFrom) * report.getRounds().size() / rounds,
+            progressTo);
+        for (ApproachEntry entry : alive) {
+            long work = entry.result.getTrainingTimeMillis() + entry.result.getEvaluationTimeMillis();
+            report.addWork(work, work);
+        }
+        report.setWallTimeMillis((System.nanoTime() - start) / 1_000_000);
+
+        lastRaceReport = report;
+        System.out.println(report);
+    }
+
+    /**
+     * Evaluate the approaches one after another, or concurrently in parallel mode,
+     * stopping any that overrun their time budget or get cancelled
+     *
+     * @param finalRound whether these are the full-data evaluations the best approach is picked from
+     * @param progressFrom progress percentage when the run starts
+     * @param progressTo progress percentage when all approaches are done
+     */
+    private void runApproaches(List<ApproachEntry> tasks, boolean finalRound,
+                               int progressFrom, int progressTo) throws Exception {
+        ExecutorService pool = parallel ? executor : null;
+        boolean ownsPool = pool == null;
+        int slots;
+        if (ownsPool) {
+            // The number of approaches running at once is bounded by slots rather than by
+            // threads: a stopped build that ignores interruption frees its slot right away
+            // and finishes on its own daemon thread
+            slots = parallel ? Math.max(1, Math.min(tasks.size(), Runtime.getRuntime().availableProcessors())) : 1;
+            pool = Executors.newCachedThreadPool(daemonThreads("classification"));
+        } else {
+            slots = Math.max(1, tasks.size());
+        }
+
+        Run run = new Run(tasks, slots, Executors.newSingleThreadScheduledExecutor(daemonThreads("classification-watchdog")),
+            finalRound, progressFrom, progressTo);
+        currentRun = run;
+        try {
+            if (cancelRequested) {
+                stopAll(run, Result.Status.CANCELLED);
+            }
+            if (timeBudget != null) {
+                // The budget covers the whole call, which may run several racing rounds
+                run.watchdog.schedule(() -> stopAll(run, Result.Status.TIMED_OUT),
+                    Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+
+            if (multiKEvaluation) {
+                groupMultiK(tasks);
+            }
+
+            try {
+                for (ApproachEntry task : tasks) {
+                    if (task.groupedWith != null) {
+                        continue; // Evaluated by the task of the first approach in its group
+                    }
+                    run.slots.acquire();
+                    synchronized (run) {
+                        if (task.result != null) {
+                            run.slots.release();
+                            continue; // Stopped before it started
+                        }
+                        task.holdsSlot = true;
+                    }
+                    task.task = pool.submit(() -> evaluateApproach(run, task));
+                }
+                run.remaining.await();
+            } catch (InterruptedException e) {
+                stopAll(run, Result.Status.CANCELLED);
+                throw e;
+            }
+        } finally {
+            currentRun = null;
+            run.watchdog.shutdownNow();
+            if (ownsPool) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private void evaluateApproach(Run run, ApproachEntry entry) {
+        if (entry.result != null) {
+            return; // Stopped before it got a thread
+        }
+
+        ScheduledFuture<?> timeout = null;
+        Duration budget = getApproachTimeBudget(entry.approach);
+        if (budget != null) {
+            timeout = run.watchdog.schedule(() -> stopApproach(run, entry, Result.Status.TIMED_OUT),
+                budget.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        try {
+            if (entry.space != null) {
+                finishApproach(run, entry, searchApproach(entry));
+            } else if (entry.followers.isEmpty()) {
+                finishApproach(run, entry, runClassifier(entry.prototype, entry.data, entry.folds, entry.approach.getDisplayName()));
+            } else {
+                List<ApproachEntry> group = new ArrayList<>();
+                group.add(entry);
+                group.addAll(entry.followers);
+                List<Result> groupResults = runMultiK(group);
+                for (int i = 0; i < group.size(); i++) {
+                    finishApproach(run, group.get(i), groupResults.get(i));
+                }
+            }
+        } finally {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Group IBk approaches of the same class that share data and folds and differ only in K.
+     * The first of each group evaluates the whole group.
+     */
+    private static void groupMultiK(List<ApproachEntry> tasks) {
+        for (ApproachEntry task : tasks) {
+            task.followers.clear();
+            task.groupedWith = null;
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            ApproachEntry first = tasks.get(i);
+            if (first.groupedWith != null || first.space != null || !(first.prototype instanceof IBk)) {
+                continue;
+            }
+            String settings = MultiKIBk.searchSettings((IBk) first.prototype);
+            for (int j = i + 1; j < tasks.size(); j++) {
+                ApproachEntry other = tasks.get(j);
+                if (other.space == null && other.prototype.getClass() == first.prototype.getClass() && other.data == first.data && other.folds == first.folds
+                    && settings.equals(MultiKIBk.searchSettings((IBk) other.prototype))) {
+                    first.followers.add(other);
+                    other.groupedWith = first;
+                }
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
     private void trainBestClassifier() throws Exception {
-        if (results.isEmpty()) {
+        // Rank the approaches that finished, best first
+        List<ApproachEntry> ranked = new ArrayList<>();
+        for (ApproachEntry entry : registry.values()) {
+            if (entry.result.getStatus() == Result.Status.OK) {
+                ranked.add(entry);
+            }
+        }
+        ranked.sort((a, b) -> isBetter(a, b) ? -1 : isBetter(b, a) ? 1 : 0);
+        ApproachEntry best = ranked.isEmpty() ? null : ranked.get(0);
+
+        if (best == null || cancelRequested) {
+            discardSpeculativeBuilds();
+            bestClassifier = null;
+            predictionModel = null;
+            bestPipeline = null;
+            bestAlgorithmName = null;
+            batchScorer = null;
+            predictor = null;
+            isTrained = false;
             return;
         }
 
-        // Find the best result
-        Result bestResult = results.get(0);
-        for (Result result : results) {
-            if (result.getAccuracy() > bestResult.getAccuracy()) {
-                bestResult = result;
-            }
-        }
-
-        bestAlgorithmName = bestResult.getAlgorithmName();
-
-        // Recreate and train the best classifier
-        Instances trainingData = null;
-
-        if (bestAlgorithmName.contains("Naive Bayes")) {
-            bestClassifier = new NaiveBayes();
-            trainingData = dataProcessor.numericToNominal();
-        } else if (bestAlgorithmName.contains("J48")) {
-            bestClassifier = new J48();
-            trainingData = dataProcessor.getOriginalData();
-        } else if (bestAlgorithmName.contains("Random Forest")) {
-            RandomForest rf = new RandomForest();
-            rf.setNumIterations(100);
-            bestClassifier = rf;
-            trainingData = dataProcessor.getOriginalData();
-        } else if (bestAlgorithmName.contains("Random Tree")) {
-            bestClassifier = new RandomTree();
-            trainingData = dataProcessor.getOriginalData();
-        } else if (bestAlgorithmName.contains("IBk (K=3")) {
-            IBk ibk = new IBk();
-            ibk.setKNN(3);
-            bestClassifier = ibk;
-            trainingData = dataProcessor.toNumericNormalized();
-        } else if (bestAlgorithmName.contains("IBk (K=5")) {
-            IBk ibk = new IBk();
-            ibk.setKNN(5);
-            bestClassifier = ibk;
-            trainingData = dataProcessor.toNumericNormalized();
-        } else if (bestAlgorithmName.contains("IBk (K=7")) {
-            IBk ibk = new IBk();
-            ibk.setKNN(7);
-            bestClassifier = ibk;
-            trainingData = dataProcessor.toNumericNormalized();
-        } else if (bestAlgorithmName.contains("Logistic Regression")) {
-            bestClassifier = new Logistic();
-            trainingData = dataProcessor.toNumericNormalized();
-        } else if (bestAlgorithmName.contains("Multilayer Perceptron")) {
-            MultilayerPerceptron mlp = new MultilayerPerceptron();
-            mlp.setLearningRate(0.3);
-            mlp.setMomentum(0.2);
-            mlp.setTrainingTime(500);
-            mlp.setHiddenLayers("a");
-            bestClassifier = mlp;
-            trainingData = dataProcessor.toNumericNormalized();
-        } else if (bestAlgorithmName.contains("SVM")) {
-            bestClassifier = new SMO();
-            trainingData = dataProcessor.toNumericNormalized();
-        }
-
-        if (bestClassifier != null && trainingData != null) {
-            bestClassifierInstances = trainingData;
-            bestClassifier.buildClassifier(trainingData);
+        if (ensembleSize > 1 && ranked.size() > 1) {
+            trainEnsemble(ranked.subList(0, Math.min(ensembleSize, ranked.size())));
+            return;
+        }
+
+        bestAlgorithmName = best.result.getAlgorithmName();
+        Classifier model = takeFullModel(best);
+        discardSpeculativeBuilds();
+
+        bestClassifier = model;
+        bestPipeline = pipelineFor(best);
+        predictionModel = compileForPrediction(model, best.data, bestAlgorithmName);
+        batchScorer = null;
+        predictor = null;
+        isTrained = true;
+        saveModel();
+    }
+
+    /**
+     * Train the given approaches in parallel and make them the prediction model as
+     * one ensemble. For stacking, every member is also cross-validated on the shared
+     * folds, in the same pool, to get the out-of-fold predictions the combiner learns from.
+     */
+    private void trainEnsemble(List<ApproachEntry> top) throws Exception {
+        EnsembleModel ensemble;
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+            daemonThreads("ensemble-build"));
+        try {
+            List<Future<Classifier>> models = new ArrayList<>();
+            for (ApproachEntry entry : top) {
+                models.add(pool.submit(() -> takeFullModel(entry)));
+            }
+            boolean stacking = ensembleCombination == EnsembleModel.Combination.STACKING;
+            List<List<Future<double[][]>>> heldOut = new ArrayList<>();
+            if (stacking) {
+                for (ApproachEntry entry : top) {
+                    List<Future<double[][]>> folds = new ArrayList<>();
+                    for (int fold = 0; fold < entry.folds.getNumFolds(); fold++) {
+                        int f = fold;
+                        folds.add(pool.submit(() -> entry.predictHeldOut(f)));
+                    }
+                    heldOut.add(folds);
+                }
+            }
+
+            List<EnsembleModel.Member> members = new ArrayList<>();
+            for (int m = 0; m < top.size(); m++) {
+                ApproachEntry entry = top.get(m);
+                String name = entry.result.getAlgorithmName();
+                members.add(new EnsembleModel.Member(
+                    name,
+                    compileForPrediction(await(models.get(m)), entry.data, name),
+                    pipelineFor(entry),
+                    entry.result.getAccuracy() / 100
+                ));
+            }
+            ensemble = new EnsembleModel(members, ensembleCombination);
+
+            if (stacking) {
+                // Every member's folds hold the same rows in the same order, so the
+                // held-out rows line up across members when the folds are concatenated
+                Instances original = dataProcessor.getOriginalData();
+                FoldPlan folds = top.get(0).folds;
+                double[][][] predictions = new double[top.size()][original.numInstances()][];
+                for (int m = 0; m < top.size(); m++) {
+                    int row = 0;
+                    for (Future<double[][]> fold : heldOut.get(m)) {
+                        for (double[] distribution : await(fold)) {
+                            predictions[m][row++] = distribution;
+                        }
+                    }
+                }
+                double[] classValues = new double[original.numInstances()];
+                int row = 0;
+                for (int fold = 0; fold < folds.getNumFolds(); fold++) {
+                    Instances test = folds.testFold(original, fold);
+                    for (int i = 0; i < test.numInstances(); i++) {
+                        classValues[row++] = test.instance(i).classValue();
+                    }
+                }
+                ensemble.buildMetaModel(predictions, original.classAttribute(), classValues);
+            }
+        } finally {
+            pool.shutdownNow();
+            discardSpeculativeBuilds();
+        }
+
+        Instances original = dataProcessor.getOriginalData();
+        bestAlgorithmName = ensemble.getDisplayName();
+        bestClassifier = ensemble;
+        predictionModel = ensemble;
+        // The members bring their own preprocessing, the ensemble takes original rows
+        bestPipeline = new PreprocessingPipeline(original, new ArrayList<>(), original);
+        batchScorer = null;
+        predictor = null;
+        isTrained = true;
+        saveModel();
+    }
+
+    /**
+     * The speculative build of an approach if one was started, otherwise a build
+     * from its cached prototype and preprocessed data right away
+     */
+    private static Classifier takeFullModel(ApproachEntry entry) throws Exception {
+        Future<Classifier> pending = entry.fullModel;
+        if (pending != null && !pending.isCancelled()) {
+            return await(pending);
+        }
+        return entry.buildFullModel();
+    }
+
+    /**
+     * Pipeline from the original data to an approach's view. It copies the view's
+     * fitted filters, so ensemble members on the same view transform rows independently.
+     */
+    private PreprocessingPipeline pipelineFor(ApproachEntry entry) throws Exception {
+        return new PreprocessingPipeline(
+            dataProcessor.getOriginalData(),
+            dataProcessor.getFittedFilters(entry.approach.getView()),
+            entry.data
+        );
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        }
+    }
+
+    /**
+     * Restore the best model saved by an earlier run on the same, unchanged dataset,
+     * together with that run's results, so predictions need no retraining
+     *
+     * @return whether a saved model was loaded
+     */
+    public boolean loadSavedModel() {
+        if (!USE_MODEL_STORE) {
+            return false;
+        }
+        try {
+            ModelStore.SavedModel saved = ModelStore.load(datasetPath);
+            if (saved == null || !fitsEnsembleSettings(saved.getClassifier())) {
+                return false;
+            }
+            bestClassifier = saved.getClassifier();
+            predictionModel = USE_COMPILED_TREES && saved.getCompiledModel() != null
+                ? saved.getCompiledModel()
+                : bestClassifier;
+            if (predictionModel instanceof CompiledTreeModel) {
+                ((CompiledTreeModel) predictionModel).setParallelVote(parallelTreeVote);
+            }
+            bestPipeline = saved.getPipeline();
+            bestAlgorithmName = saved.getAlgorithmName();
+            results.clear();
+            results.addAll(saved.getResults());
+            batchScorer = null;
+            predictor = null;
             isTrained = true;
+            return true;
+        } catch (Exception e) {
+            System.err.println("Ignoring unreadable saved model: " + e.getMessage());
+            return false;
         }
     }
 
-    private void runClassifier(Classifier classifier, Instances data, String name) {
+    /**
+     * Whether a saved model is what a run with the current ensemble settings would
+     * train; a single model when ensembles are off, else an ensemble of the same size
+     * combined the same way
+     */
+    private boolean fitsEnsembleSettings(Classifier saved) {
+        if (saved instanceof EnsembleModel) {
+            EnsembleModel ensemble = (EnsembleModel) saved;
+            return ensembleSize > 1
+                && ensemble.getNumMembers() == ensembleSize
+                && ensemble.getCombination() == ensembleCombination;
+        }
+        return ensembleSize == 1;
+    }
+
+    /**
+     * Store the best model next to the dataset. A failure here only costs the next session a retraining.
+     */
+    private void saveModel() {
+        if (!USE_MODEL_STORE) {
+            return;
+        }
+        try {
+            CompiledTreeModel compiled = predictionModel instanceof CompiledTreeModel
+                ? (CompiledTreeModel) predictionModel
+                : null;
+            ModelStore.save(datasetPath, getDataProcessor().getFingerprint(),
+                new ModelStore.SavedModel(bestAlgorithmName, bestClassifier, compiled, bestPipeline, results));
+        } catch (Exception e) {
+            System.err.println("Could not save model: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The compiled form of a tree model if it reproduces the model exactly on the
+     * data it was trained on, otherwise the model itself. A Weka version whose tree
+     * internals the compiler doesn't know fails here rather than silently going uncompiled.
+     */
+    private Classifier compileForPrediction(Classifier model, Instances data, String name) {
+        if (!USE_COMPILED_TREES) {
+            return model;
+        }
+        CompiledTreeModel compiled = CompiledTreeModel.compile(model, new Instances(data, 0));
+        if (compiled == null) {
+            return model;
+        }
+        try {
+            if (compiled.matches(model, data)) {
+                compiled.setParallelVote(parallelTreeVote);
+                return compiled;
+            }
+            System.err.println("Compiled model differs from " + name + ", predicting with the original");
+        } catch (Exception e) {
+            System.err.println("Could not check compiled model: " + e.getMessage());
+        }
+        return model;
+    }
+
+    private void discardSpeculativeBuilds() {
+        for (ApproachEntry entry : registry.values()) {
+            if (entry.fullModel != null && !entry.fullModel.isDone()) {
+                entry.fullModel.cancel(true);
+            }
+        }
+        if (speculativePool != null) {
+            speculativePool.shutdown();
+            speculativePool = null;
+        }
+    }
+
+    private Result runClassifier(Classifier classifier, Instances data, FoldPlan folds, String name) {
         try {
             // Use 10-fold cross-validation
-            Evaluation eval = new Evaluation(data);
-            eval.crossValidateModel(classifier, data, 10, new Random(1));
-
-            // Create result object
-            Result result = new Result(
-                name,
-                eval.pctCorrect(),
-                (int) eval.correct(),
-                data.numInstances()
-            );
-            
-            results.add(result);
-            
-            System.out.println(String.format(
-                "%s: %.2f%% (%d/%d)",
-                name,
-                result.getAccuracy(),
-                result.getCorrectlyClassified(),
-                result.getTotalInstances()
-            ));
-            
+            List<FoldMetrics> foldMetrics = new ArrayList<>();
+            Evaluation eval = crossValidator.crossValidate(classifier, data, folds, foldMetrics);
+            return createResult(name, eval, foldMetrics, data);
+        } catch (Exception e) {
+            return stoppedOrFailed(name, e, data);
+        }
+    }
+
+    /**
+     * Cross-validate a group of IBk approaches in one pass, returning their results in group order
+     */
+    private List<Result> runMultiK(List<ApproachEntry> group) {
+        ApproachEntry first = group.get(0);
+        int[] ks = new int[group.size()];
+        for (int i = 0; i < ks.length; i++) {
+            ks[i] = ((IBk) group.get(i).prototype).getKNN();
+        }
+
+        List<Result> groupResults = new ArrayList<>();
+        try {
+            List<List<FoldMetrics>> foldMetrics = new ArrayList<>();
+            Evaluation[] evals = crossValidator.crossValidateMultiK((IBk) first.prototype, ks, first.data, first.folds, foldMetrics);
+            for (int i = 0; i < ks.length; i++) {
+                groupResults.add(createResult(group.get(i).approach.getDisplayName(), evals[i], foldMetrics.get(i), first.data));
+            }
         } catch (Exception e) {
-            System.err.println("Error running " + name + ": " + e.getMessage());
-            // Add failed result
-            results.add(new Result(name, 0.0, 0, data.numInstances()));
+            for (ApproachEntry entry : group) {
+                groupResults.add(stoppedOrFailed(entry.approach.getDisplayName(), e, first.data));
+            }
+        }
+        return groupResults;
+    }
+
+    private static Result createResult(String name, Evaluation eval, List<FoldMetrics> foldMetrics, Instances data) {
+        Result result = new Result(
+            name,
+            eval.pctCorrect(),
+            (int) eval.correct(),
+            data.numInstances()
+        );
+        result.setFoldMetrics(foldMetrics);
+
+        System.out.println(String.format(
+            "%s: %.2f%% (%d/%d), train %d ms, eval %d ms",
+            name,
+            result.getAccuracy(),
+            result.getCorrectlyClassified(),
+            result.getTotalInstances(),
+            result.getTrainingTimeMillis(),
+            result.getEvaluationTimeMillis()
+        ));
+
+        return result;
+    }
+
+    private static Result stoppedOrFailed(String name, Exception e, Instances data) {
+        if (e instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+            // Stopped by a time budget or cancel, which already recorded the result
+            Result stopped = new Result(name, 0.0, 0, data.numInstances());
+            stopped.setStatus(Result.Status.CANCELLED);
+            return stopped;
         }
+        System.err.println("Error running " + name + ": " + e.getMessage());
+        // Add failed result
+        Result failed = new Result(name, 0.0, 0, data.numInstances());
+        failed.setStatus(Result.Status.FAILED);
+        return failed;
     }
 
     public List<Result> getResults() {
@@ -258,28 +1201,179 @@ public class ClassificationEngine {
         return bestAlgorithmName;
     }
 
+    /**
+     * Predicted class label of one row, in original attribute order. Safe to call
+     * from many threads at once; see ConcurrentPredictor.
+     */
     public String predictClass(double[] attributeValues) throws Exception {
-        if (!isTrained || bestClassifier == null || bestClassifierInstances == null) {
+        return getPredictor().predictClass(attributeValues);
+    }
+
+    /**
+     * Class distributions of the best model for every row, in row order. Rows are
+     * matched to the training attributes by name and run through the same
+     * preprocessing as predictClass, on several threads.
+     */
+    public double[][] predictBatch(Instances rows) throws Exception {
+        return getBatchScorer().score(rows);
+    }
+
+    /**
+     * Class distributions of the best model for rows of attribute values in original
+     * attribute order, as predictClass takes them. Safe to call from many threads at
+     * once; each call scores its rows on the calling thread as one batch.
+     */
+    public double[][] predictDistributions(double[][] attributeValues) throws Exception {
+        return getBatchScorer().scoreValues(attributeValues);
+    }
+
+    /**
+     * Structure of the rows predictClass and predictDistributions accept
+     */
+    public Instances getInputHeader() throws Exception {
+        if (!isTrained || bestPipeline == null) {
             throw new Exception("Model is not trained yet. Please run classification first.");
         }
+        return bestPipeline.getInputHeader();
+    }
 
-        // Create a new instance with the provided attribute values
-        weka.core.Instance instance = new weka.core.DenseInstance(bestClassifierInstances.numAttributes());
-        instance.setDataset(bestClassifierInstances);
+    /**
+     * Stream an ARFF or CSV file through the best model, writing the predicted label
+     * and class probabilities of each row as CSV.
+     *
+     * @return number of rows scored
+     */
+    public long predictFile(Path input, Path output) throws Exception {
+        return getBatchScorer().scoreFile(input, output);
+    }
 
-        // Set attribute values (excluding class attribute)
-        for (int i = 0; i < attributeValues.length; i++) {
-            instance.setValue(i, attributeValues[i]);
+    /**
+     * Class labels, in the order of the distributions returned by predictBatch
+     */
+    public List<String> getClassValues() throws Exception {
+        if (!isTrained || bestPipeline == null) {
+            throw new Exception("Model is not trained yet. Please run classification first.");
         }
+        List<String> values = new ArrayList<>();
+        Attribute classAttribute = bestPipeline.getOutputHeader().classAttribute();
+        for (int i = 0; i < classAttribute.numValues(); i++) {
+            values.add(classAttribute.value(i));
+        }
+        return values;
+    }
 
-        // Predict
-        double prediction = bestClassifier.classifyInstance(instance);
+    private synchronized ConcurrentPredictor getPredictor() throws Exception {
+        if (!isTrained || bestClassifier == null || bestPipeline == null) {
+            throw new Exception("Model is not trained yet. Please run classification first.");
+        }
+        if (predictor == null) {
+            predictor = new ConcurrentPredictor(predictionModel, bestPipeline);
+        }
+        return predictor;
+    }
 
-        // Get class name
-        return bestClassifierInstances.classAttribute().value((int) prediction);
+    private synchronized BatchScorer getBatchScorer() throws Exception {
+        if (!isTrained || bestClassifier == null || bestPipeline == null) {
+            throw new Exception("Model is not trained yet. Please run classification first.");
+        }
+        if (batchScorer == null) {
+            batchScorer = new BatchScorer(
+                predictionModel,
+                bestPipeline,
+                Runtime.getRuntime().availableProcessors(),
+                BatchScorer.DEFAULT_CHUNK_SIZE
+            );
+        }
+        return batchScorer;
+    }
+
+    /**
+     * Whether the dataset is loaded; an engine restored from a saved model starts without it
+     */
+    synchronized boolean hasLoadedData() {
+        return dataProcessor != null;
     }
 
-    public DataProcessor getDataProcessor() {
+    /**
+     * The loaded dataset, loading it first in an engine restored from a saved model
+     */
+    public synchronized DataProcessor getDataProcessor() throws Exception {
+        if (dataProcessor == null) {
+            dataProcessor = new DataProcessor(inspector);
+        }
         return dataProcessor;
     }
+
+    /**
+     * Registry entry for one approach: its configured prototype, the preprocessed
+     * data and fold plan it is evaluated on, its result and the full-data model build, if started
+     */
+    private static class ApproachEntry {
+        private final Approach approach;
+        // Replaced by the best configuration when the approach's parameters are searched
+        private Classifier prototype;
+        private final Instances data;
+        private final FoldPlan folds;
+        private volatile Result result;
+        private volatile Future<?> task;
+        private final List<ApproachEntry> followers = new ArrayList<>();
+        private ApproachEntry groupedWith;
+        private boolean holdsSlot;
+        private Future<Classifier> fullModel;
+        private String cacheKey;
+        // Searched instead of cross-validated as configured, when parameter search is on
+        private ParameterSpace space;
+
+        ApproachEntry(Approach approach, Classifier prototype, Instances data, FoldPlan folds) {
+            this.approach = approach;
+            this.prototype = prototype;
+            this.data = data;
+            this.folds = folds;
+        }
+
+        Classifier buildFullModel() throws Exception {
+            Classifier model = AbstractClassifier.makeCopy(prototype);
+            model.buildClassifier(data);
+            return model;
+        }
+
+        /**
+         * Distributions of the test rows of one fold from a model trained on the rest
+         */
+        double[][] predictHeldOut(int fold) throws Exception {
+            Classifier model = AbstractClassifier.makeCopy(prototype);
+            model.buildClassifier(folds.trainFold(data, fold));
+            Instances test = folds.testFold(data, fold);
+            double[][] distributions = new double[test.numInstances()][];
+            for (int i = 0; i < distributions.length; i++) {
+                distributions[i] = model.distributionForInstance(test.instance(i));
+            }
+            return distributions;
+        }
+    }
+
+    /**
+     * State of one runAllClassifications call, shared with its watchdog timers
+     */
+    private static class Run {
+        private final List<ApproachEntry> tasks;
+        private final ScheduledExecutorService watchdog;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final CountDownLatch remaining;
+        private final Semaphore slots;
+        private final boolean finalRound;
+        private final int progressFrom;
+        private final int progressTo;
+
+        Run(List<ApproachEntry> tasks, int slots, ScheduledExecutorService watchdog,
+            boolean finalRound, int progressFrom, int progressTo) {
+            this.tasks = tasks;
+            this.finalRound = finalRound;
+            this.progressFrom = progressFrom;
+            this.progressTo = progressTo;
+            this.slots = new Semaphore(slots);
+            this.watchdog = watchdog;
+            this.remaining = new CountDownLatch(tasks.size());
+        }
+    }
 }
@@ -0,0 +1,249 @@
+package com.wekaproject;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary column-per-attribute copy of a parsed dataset, stored next to the source
+ * file so later loads skip ARFF parsing. Numeric attributes are stored as double
+ * columns, nominal ones as byte or short value codes (-1 for missing). The header
+ * records the attribute metadata and the source fingerprint; a cache whose source
+ * has changed is ignored and rebuilt. Columns are read back through memory-mapped
+ * windows straight into the double[] columns of a ColumnarInstances, so a load
+ * makes no per-row objects.
+ *
+ * Layout: magic, version, source fingerprint, class index, ARFF header text,
+ * row and attribute counts, the column type of every attribute, optional weight
+ * column, then one column per attribute.
+ */
+public class ColumnarCache {
+    private static final int MAGIC = 0x57434331; // "WCC1"
+    private static final int VERSION = 2;
+    private static final byte DOUBLE_COLUMN = 0;
+    private static final byte BYTE_COLUMN = 1;
+    private static final byte SHORT_COLUMN = 2;
+
+    // Largest region mapped at once; a single mapping is limited to 2 GB
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    public static Path cachePathFor(String datasetPath) {
+        return Path.of(datasetPath + ".colcache");
+    }
+
+    /**
+     * Read the cached copy of a dataset, or return null if there is no cache or it
+     * no longer matches the source file. The fingerprint stored with it comes along,
+     * so a cache hit never has to hash the source.
+     */
+    public static Cached load(String datasetPath) throws IOException {
+        Path source = Path.of(datasetPath);
+        Path cache = cachePathFor(datasetPath);
+        if (!Files.isRegularFile(cache)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            DatasetFingerprint fingerprint = new DatasetFingerprint(in.readLong(), in.readLong(), readString(in));
+            if (!fingerprint.matches(source)) {
+                return null;
+            }
+
+            int classIndex = in.readInt();
+            Instances header = new Instances(new StringReader(readString(in)));
+            header.setClassIndex(classIndex);
+
+            int numRows = in.readInt();
+            int numAttributes = in.readInt();
+            boolean hasWeights = in.readBoolean();
+            if (numAttributes != header.numAttributes()) {
+                return null;
+            }
+            byte[] types = new byte[numAttributes];
+            in.readFully(types);
+
+            // Everything after the metadata is read through mappings at absolute offsets
+            long position = channel.position();
+
+            double[] weights = null;
+            if (hasWeights) {
+                weights = new double[numRows];
+                position = readDoubles(channel, position, weights);
+            }
+
+            double[][] columns = new double[numAttributes][numRows];
+            for (int a = 0; a < numAttributes; a++) {
+                switch (types[a]) {
+                    case DOUBLE_COLUMN:
+                        position = readDoubles(channel, position, columns[a]);
+                        break;
+                    case BYTE_COLUMN:
+                    case SHORT_COLUMN:
+                        position = readCodes(channel, position, types[a] == BYTE_COLUMN ? 1 : 2, columns[a]);
+                        break;
+                    default:
+                        return null;
+                }
+            }
+
+            Instances data = new ColumnarInstances(NumericColumns.wrap(header, columns, weights));
+            return new Cached(data, fingerprint);
+        }
+    }
+
+    /**
+     * Write the cache for a dataset loaded from the given file. Datasets with string
+     * or relational attributes are not cached.
+     *
+     * @param fingerprint fingerprint of the file the data was loaded from
+     * @return whether a cache was written
+     */
+    public static boolean write(String datasetPath, Instances data, DatasetFingerprint fingerprint)
+            throws IOException {
+        byte[] types = new byte[data.numAttributes()];
+        for (int a = 0; a < data.numAttributes(); a++) {
+            Attribute attribute = data.attribute(a);
+            if (attribute.isNumeric()) {
+                types[a] = DOUBLE_COLUMN;
+            } else if (attribute.isNominal() && attribute.numValues() <= Byte.MAX_VALUE) {
+                types[a] = BYTE_COLUMN;
+            } else if (attribute.isNominal() && attribute.numValues() <= Short.MAX_VALUE) {
+                types[a] = SHORT_COLUMN;
+            } else {
+                return false;
+            }
+        }
+
+        boolean hasWeights = !data.allInstanceWeightsIdentical() || data.numInstances() > 0 && data.instance(0).weight() != 1.0;
+        int numRows = data.numInstances();
+
+        // Write to a temporary file first so a half-written cache is never picked up
+        Path cache = cachePathFor(datasetPath);
+        Path temp = cache.resolveSibling(cache.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint.getSize());
+            out.writeLong(fingerprint.getLastModified());
+            writeString(out, fingerprint.getContentHash());
+            out.writeInt(data.classIndex());
+            writeString(out, new Instances(data, 0).toString());
+            out.writeInt(numRows);
+            out.writeInt(data.numAttributes());
+            out.writeBoolean(hasWeights);
+            out.write(types);
+
+            if (hasWeights) {
+                for (int r = 0; r < numRows; r++) {
+                    out.writeDouble(data.instance(r).weight());
+                }
+            }
+
+            for (int a = 0; a < data.numAttributes(); a++) {
+                for (int r = 0; r < numRows; r++) {
+                    Instance instance = data.instance(r);
+                    if (types[a] == DOUBLE_COLUMN) {
+                        out.writeDouble(instance.value(a));
+                    } else {
+                        int code = instance.isMissing(a) ? -1 : (int) instance.value(a);
+                        if (types[a] == BYTE_COLUMN) {
+                            out.writeByte(code);
+                        } else {
+                            out.writeShort(code);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    private static long readDoubles(FileChannel channel, long position, double[] target) throws IOException {
+        int done = 0;
+        while (done < target.length) {
+            int count = (int) Math.min(target.length - done, WINDOW_SIZE / Double.BYTES);
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * Double.BYTES);
+            window.asDoubleBuffer().get(target, done, count);
+            position += (long) count * Double.BYTES;
+            done += count;
+        }
+        return position;
+    }
+
+    private static long readCodes(FileChannel channel, long position, int width, double[] target)
+            throws IOException {
+        int done = 0;
+        while (done < target.length) {
+            int count = (int) Math.min(target.length - done, WINDOW_SIZE / width);
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * width);
+            for (int i = 0; i < count; i++) {
+                int code = width == 1 ? window.get(i) : window.getShort(i * 2);
+                target[done + i] = code < 0 ? Utils.missingValue() : code;
+            }
+            position += (long) count * width;
+            done += count;
+        }
+        return position;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A dataset read from the cache, with the fingerprint of the source it was built from
+     */
+    public static class Cached {
+        private final Instances data;
+        private final DatasetFingerprint fingerprint;
+
+        Cached(Instances data, DatasetFingerprint fingerprint) {
+            this.data = data;
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * The cached rows, read-only and backed by columns
+         */
+        public Instances getData() {
+            return data;
+        }
+
+        public DatasetFingerprint getFingerprint() {
+            return fingerprint;
+        }
+    }
+}
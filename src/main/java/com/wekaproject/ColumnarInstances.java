@@ -0,0 +1,154 @@
+package com.wekaproject;
+
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.ObjectStreamException;
+
+/**
+ * Read-only Instances backed by NumericColumns, so classifiers, filters and fold
+ * views can use columnar data unchanged. No row objects are kept: Weka reaches
+ * rows through Instance objects, so each access gets a small Row that reads its
+ * values from the columns. Rows are made afresh on every access, so a change to
+ * one is never seen by the view; take a mutable copy to change the data.
+ */
+public class ColumnarInstances extends VirtualInstances {
+    private static final long serialVersionUID = 1L;
+
+    private final transient NumericColumns columns;
+
+    public ColumnarInstances(NumericColumns columns) {
+        super(columns.getHeader());
+        this.columns = columns;
+    }
+
+    public NumericColumns getColumns() {
+        return columns;
+    }
+
+    @Override
+    protected int rowCount() {
+        return columns.getNumRows();
+    }
+
+    @Override
+    protected Instance row(int index) {
+        Row row = new Row(columns, index, columns.weight(index));
+        row.setDataset(this);
+        return row;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        // The columns aren't serialized, so write the rows out as an ordinary dataset
+        return new Instances(this);
+    }
+
+    /**
+     * One row of NumericColumns seen as a DenseInstance. Copies are Rows on the
+     * same columns, as DenseInstance copies share their values array; the first
+     * change to a row gives it its own values, after which it is an ordinary
+     * DenseInstance. Serialized rows are written as plain DenseInstances.
+     */
+    public static class Row extends DenseInstance {
+        private static final long serialVersionUID = 1L;
+
+        private final transient NumericColumns columns;
+        private final int row;
+
+        Row(NumericColumns columns, int row, double weight) {
+            super(weight, null);
+            this.columns = columns;
+            this.row = row;
+        }
+
+        private boolean detached() {
+            return m_AttValues != null;
+        }
+
+        private void detach() {
+            if (m_AttValues == null) {
+                m_AttValues = columns.row(row);
+            }
+        }
+
+        @Override
+        public double value(int attIndex) {
+            return detached() ? m_AttValues[attIndex] : columns.value(row, attIndex);
+        }
+
+        @Override
+        public double valueSparse(int indexOfIndex) {
+            return value(indexOfIndex);
+        }
+
+        @Override
+        public double[] toDoubleArray() {
+            return detached() ? super.toDoubleArray() : columns.row(row);
+        }
+
+        @Override
+        public int numAttributes() {
+            return detached() ? m_AttValues.length : columns.getNumAttributes();
+        }
+
+        @Override
+        public int numValues() {
+            return numAttributes();
+        }
+
+        @Override
+        public Object copy() {
+            Row copy = new Row(columns, row, m_Weight);
+            copy.m_AttValues = m_AttValues;
+            copy.m_Dataset = m_Dataset;
+            return copy;
+        }
+
+        @Override
+        public String toStringNoWeight(int afterDecimalPoint) {
+            if (detached()) {
+                return super.toStringNoWeight(afterDecimalPoint);
+            }
+            Instance dense = new DenseInstance(m_Weight, columns.row(row));
+            dense.setDataset(m_Dataset);
+            return dense.toStringNoWeight(afterDecimalPoint);
+        }
+
+        @Override
+        public void setValue(int attIndex, double value) {
+            detach();
+            super.setValue(attIndex, value);
+        }
+
+        @Override
+        public void setValueSparse(int indexOfIndex, double value) {
+            detach();
+            super.setValueSparse(indexOfIndex, value);
+        }
+
+        @Override
+        public void replaceMissingValues(double[] array) {
+            detach();
+            super.replaceMissingValues(array);
+        }
+
+        @Override
+        protected void forceDeleteAttributeAt(int position) {
+            detach();
+            super.forceDeleteAttributeAt(position);
+        }
+
+        @Override
+        protected void forceInsertAttributeAt(int position) {
+            detach();
+            super.forceInsertAttributeAt(position);
+        }
+
+        private Object writeReplace() throws ObjectStreamException {
+            DenseInstance dense = new DenseInstance(m_Weight, toDoubleArray());
+            dense.setDataset(m_Dataset);
+            return dense;
+        }
+    }
+}
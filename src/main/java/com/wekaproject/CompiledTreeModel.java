@@ -0,0 +1,523 @@
+package com.wekaproject;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.IteratedSingleClassifierEnhancer;
+import weka.classifiers.trees.J48;
+import weka.classifiers.trees.RandomForest;
+import weka.classifiers.trees.RandomTree;
+import weka.classifiers.trees.j48.BinC45Split;
+import weka.classifiers.trees.j48.C45Split;
+import weka.classifiers.trees.j48.ClassifierSplitModel;
+import weka.classifiers.trees.j48.ClassifierTree;
+import weka.classifiers.trees.j48.NoSplit;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.Version;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A trained J48, RandomTree or RandomForest flattened into primitive arrays:
+ * per node the split attribute, threshold, first child and class distribution.
+ * A prediction is then a loop over array indices instead of a walk over Weka's
+ * tree objects. The arithmetic, including the fractional descent for missing
+ * values and the order of every sum, is the one Weka uses, so the distributions
+ * are bit for bit the same; matches() checks that on a dataset.
+ *
+ * The arrays are never changed after compiling, so one instance can be shared by
+ * any number of threads. Forests can optionally vote with their trees in parallel.
+ *
+ * Compiling reads private fields of Weka's tree classes, as laid out in Weka 3.8.6
+ * (the version in pom.xml). If a Weka upgrade renames or retypes one of them,
+ * compile throws instead of quietly predicting with the uncompiled model;
+ * CompiledTreeModelTest covers every field read here.
+ */
+public class CompiledTreeModel extends AbstractClassifier {
+    private static final long serialVersionUID = 1L;
+
+    private enum Kind { J48, RANDOM_TREE, RANDOM_FOREST }
+
+    private final Kind kind;
+    private final Nodes[] trees;
+    private final int numClasses;
+    private boolean parallelVote;
+
+    private CompiledTreeModel(Kind kind, Nodes[] trees, int numClasses) {
+        this.kind = kind;
+        this.trees = trees;
+        this.numClasses = numClasses;
+    }
+
+    /**
+     * Compile a trained model, or return null if it is not a supported tree
+     * learner or uses a setting the compiled form doesn't reproduce
+     *
+     * @param header structure of the data the model was trained on
+     * @throws IllegalStateException if the Weka tree classes don't have the fields this reads
+     */
+    public static CompiledTreeModel compile(Classifier model, Instances header) {
+        if (header.classIndex() < 0 || !header.classAttribute().isNominal()) {
+            return null;
+        }
+        try {
+            if (model instanceof J48) {
+                J48 tree = (J48) model;
+                if (tree.getUseLaplace()) {
+                    return null;
+                }
+                Nodes nodes = new Nodes(header.numClasses());
+                if (!nodes.addJ48(getField(J48.class, "m_root", tree), header)) {
+                    return null;
+                }
+                return new CompiledTreeModel(Kind.J48, new Nodes[]{nodes.trim()}, header.numClasses());
+            }
+            if (model instanceof RandomForest) {
+                RandomForest forest = (RandomForest) model;
+                Classifier[] members = getField(IteratedSingleClassifierEnhancer.class, "m_Classifiers", forest);
+                Nodes[] trees = new Nodes[forest.getNumIterations()];
+                for (int i = 0; i < trees.length; i++) {
+                    if (!(members[i] instanceof RandomTree)) {
+                        return null;
+                    }
+                    trees[i] = compileRandomTree((RandomTree) members[i], header);
+                    if (trees[i] == null) {
+                        return null;
+                    }
+                }
+                return new CompiledTreeModel(Kind.RANDOM_FOREST, trees, header.numClasses());
+            }
+            if (model instanceof RandomTree) {
+                Nodes nodes = compileRandomTree((RandomTree) model, header);
+                return nodes == null ? null : new CompiledTreeModel(Kind.RANDOM_TREE, new Nodes[]{nodes}, header.numClasses());
+            }
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalStateException("Can't compile " + model.getClass().getSimpleName()
+                + " of Weka " + Version.VERSION + ", its internals differ from Weka 3.8.6 (" + e
+                + "); run with -Dwekaproject.compiledTrees=false to predict with the Weka trees", e);
+        }
+        return null;
+    }
+
+    private static Nodes compileRandomTree(RandomTree tree, Instances header) throws ReflectiveOperationException {
+        if (getField(RandomTree.class, "m_zeroR", tree) != null) {
+            return null;
+        }
+        Nodes nodes = new Nodes(header.numClasses());
+        Object root = getField(RandomTree.class, "m_Tree", tree);
+        if (!nodes.addRandomTree(root, header, tree.getAllowUnclassifiedInstances())) {
+            return null;
+        }
+        return nodes.trim();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T getField(Class<?> owner, String name, Object target) throws ReflectiveOperationException {
+        Field field = owner.getDeclaredField(name);
+        field.setAccessible(true);
+        return (T) field.get(target);
+    }
+
+    /**
+     * Whether the compiled model gives exactly the same class distributions and
+     * predictions as the original on every row of data
+     */
+    public boolean matches(Classifier original, Instances data) throws Exception {
+        for (int i = 0; i < data.numInstances(); i++) {
+            Instance row = data.instance(i);
+            if (!Arrays.equals(original.distributionForInstance(row), distributionForInstance(row))
+                || Double.compare(original.classifyInstance(row), classifyInstance(row)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Run the trees of a forest on several threads for each prediction. Only pays
+     * off for large forests; the votes are added up in tree order either way.
+     */
+    public void setParallelVote(boolean parallelVote) {
+        this.parallelVote = parallelVote;
+    }
+
+    public boolean getParallelVote() {
+        return parallelVote;
+    }
+
+    public int getNumTrees() {
+        return trees.length;
+    }
+
+    public int getNumNodes() {
+        int count = 0;
+        for (Nodes tree : trees) {
+            count += tree.attribute.length;
+        }
+        return count;
+    }
+
+    @Override
+    public void buildClassifier(Instances data) throws Exception {
+        throw new Exception("A compiled model can't be retrained; compile a newly trained model instead");
+    }
+
+    @Override
+    public double[] distributionForInstance(Instance instance) throws Exception {
+        return distribution(instance.toDoubleArray());
+    }
+
+    /**
+     * Class distribution for a row of values in the training attribute layout, NaN for missing
+     */
+    public double[] distribution(double[] row) throws Exception {
+        if (kind == Kind.J48) {
+            double[] probs = new double[numClasses];
+            trees[0].j48Probs(0, row, 1, probs);
+            return probs;
+        }
+        if (kind == Kind.RANDOM_TREE) {
+            return treeVote(0, row);
+        }
+
+        // Bagging's vote: add up the tree distributions in tree order, then normalize
+        double[] sums = new double[numClasses];
+        if (parallelVote) {
+            double[][] votes = new double[trees.length][];
+            IntStream.range(0, trees.length).parallel().forEach(t -> votes[t] = treeVote(t, row));
+            for (double[] vote : votes) {
+                addVote(sums, vote);
+            }
+        } else {
+            double[] vote = new double[numClasses];
+            for (Nodes tree : trees) {
+                Arrays.fill(vote, 0);
+                addVote(sums, tree.randomTreeDistribution(0, row, vote) ? vote : null);
+            }
+        }
+        if (Utils.eq(Utils.sum(sums), 0)) {
+            return sums;
+        }
+        Utils.normalize(sums);
+        return sums;
+    }
+
+    private static void addVote(double[] sums, double[] vote) throws Exception {
+        if (vote == null) {
+            throw new Exception("A tree of the forest could not classify the row");
+        }
+        for (int c = 0; c < sums.length; c++) {
+            sums[c] += vote[c];
+        }
+    }
+
+    private double[] treeVote(int tree, double[] row) {
+        double[] dist = new double[numClasses];
+        return trees[tree].randomTreeDistribution(0, row, dist) ? dist : null;
+    }
+
+    @Override
+    public double classifyInstance(Instance instance) throws Exception {
+        if (kind != Kind.J48) {
+            return super.classifyInstance(instance);
+        }
+        // ClassifierTree.classifyInstance: the first class clearly above all earlier ones
+        double[] probs = distributionForInstance(instance);
+        double maxProb = -1;
+        int maxIndex = 0;
+        for (int c = 0; c < probs.length; c++) {
+            if (Utils.gr(probs[c], maxProb)) {
+                maxIndex = c;
+                maxProb = probs[c];
+            }
+        }
+        return maxIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "Compiled " + kind + ": " + trees.length + " tree(s), " + getNumNodes() + " nodes";
+    }
+
+    /**
+     * One tree in flat arrays, nodes in depth-first order and the children of a
+     * node next to each other. A node's distribution is stored at node * numClasses.
+     */
+    private static class Nodes implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        static final byte LEAF = 0;
+        /** Nominal attribute, one child per value */
+        static final byte NOMINAL = 1;
+        /** Nominal attribute, first child for one value, second for the rest (J48 binary splits) */
+        static final byte NOMINAL_EQUALS = 2;
+        /** Numeric attribute, first child for values at most the threshold (J48) */
+        static final byte NUMERIC_AT_MOST = 3;
+        /** Numeric attribute, first child for values below the threshold (RandomTree) */
+        static final byte NUMERIC_BELOW = 4;
+
+        final int numClasses;
+        byte[] type = new byte[16];
+        int[] attribute = new int[16];
+        double[] threshold = new double[16];
+        int[] firstChild = new int[16];
+        int[] numChildren = new int[16];
+        /** Share of the parent's weight a node gets when the parent's attribute is missing */
+        double[] missingWeight = new double[16];
+        /** J48: node was empty in training, so the parent's distribution for this branch is used */
+        boolean[] empty = new boolean[16];
+        boolean[] hasDistribution = new boolean[16];
+        double[] distribution;
+        int size;
+
+        Nodes(int numClasses) {
+            this.numClasses = numClasses;
+            this.distribution = new double[16 * numClasses];
+        }
+
+        private int allocate(int count) {
+            while (size + count > type.length) {
+                int capacity = type.length * 2;
+                type = Arrays.copyOf(type, capacity);
+                attribute = Arrays.copyOf(attribute, capacity);
+                threshold = Arrays.copyOf(threshold, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                numChildren = Arrays.copyOf(numChildren, capacity);
+                missingWeight = Arrays.copyOf(missingWeight, capacity);
+                empty = Arrays.copyOf(empty, capacity);
+                hasDistribution = Arrays.copyOf(hasDistribution, capacity);
+                distribution = Arrays.copyOf(distribution, capacity * numClasses);
+            }
+            int first = size;
+            size += count;
+            return first;
+        }
+
+        Nodes trim() {
+            type = Arrays.copyOf(type, size);
+            attribute = Arrays.copyOf(attribute, size);
+            threshold = Arrays.copyOf(threshold, size);
+            firstChild = Arrays.copyOf(firstChild, size);
+            numChildren = Arrays.copyOf(numChildren, size);
+            missingWeight = Arrays.copyOf(missingWeight, size);
+            empty = Arrays.copyOf(empty, size);
+            hasDistribution = Arrays.copyOf(hasDistribution, size);
+            distribution = Arrays.copyOf(distribution, size * numClasses);
+            return this;
+        }
+
+        /**
+         * Add a J48 tree with its root as node 0
+         */
+        boolean addJ48(ClassifierTree root, Instances header) throws ReflectiveOperationException {
+            allocate(1);
+            return fillJ48(0, root, header, new DenseInstance(header.numAttributes()));
+        }
+
+        private boolean fillJ48(int node, ClassifierTree tree, Instances header, Instance allMissing)
+                throws ReflectiveOperationException {
+            ClassifierSplitModel split = tree.getLocalModel();
+            try {
+                if (tree.isLeaf()) {
+                    if (!(split instanceof NoSplit)) {
+                        return false;
+                    }
+                    type[node] = LEAF;
+                    for (int c = 0; c < numClasses; c++) {
+                        distribution[node * numClasses + c] = split.classProb(c, allMissing, -1);
+                    }
+                    hasDistribution[node] = true;
+                    return true;
+                }
+
+                int att;
+                double splitPoint;
+                if (split instanceof C45Split) {
+                    att = ((C45Split) split).attIndex();
+                    splitPoint = ((C45Split) split).splitPoint();
+                    type[node] = header.attribute(att).isNominal() ? NOMINAL : NUMERIC_AT_MOST;
+                } else if (split instanceof BinC45Split) {
+                    att = ((BinC45Split) split).attIndex();
+                    splitPoint = ((BinC45Split) split).splitPoint();
+                    type[node] = header.attribute(att).isNominal() ? NOMINAL_EQUALS : NUMERIC_AT_MOST;
+                } else {
+                    return false;
+                }
+                attribute[node] = att;
+                threshold[node] = splitPoint;
+
+                ClassifierTree[] sons = tree.getSons();
+                int first = allocate(sons.length);
+                firstChild[node] = first;
+                numChildren[node] = sons.length;
+                double[] weights = split.weights(allMissing);
+                for (int i = 0; i < sons.length; i++) {
+                    int child = first + i;
+                    missingWeight[child] = weights[i];
+                    if (getField(ClassifierTree.class, "m_isEmpty", sons[i])) {
+                        // Predicted from the parent's class counts in this branch
+                        type[child] = LEAF;
+                        empty[child] = true;
+                        for (int c = 0; c < numClasses; c++) {
+                            distribution[child * numClasses + c] = split.classProb(c, allMissing, i);
+                        }
+                        hasDistribution[child] = true;
+                    } else if (!fillJ48(child, sons[i], header, allMissing)) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw e;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        /**
+         * Add a RandomTree with its root as node 0
+         */
+        boolean addRandomTree(Object root, Instances header, boolean allowUnclassified)
+                throws ReflectiveOperationException {
+            allocate(1);
+            return fillRandomTree(0, root, header, allowUnclassified);
+        }
+
+        private boolean fillRandomTree(int node, Object tree, Instances header, boolean allowUnclassified)
+                throws ReflectiveOperationException {
+            Class<?> treeClass = tree.getClass();
+            int att = getField(treeClass, "m_Attribute", tree);
+            double[] classDistribution = getField(treeClass, "m_ClassDistribution", tree);
+
+            // A node's own distribution is used when it is a leaf or its branch gives none
+            if (classDistribution != null) {
+                double[] normalized = classDistribution.clone();
+                try {
+                    Utils.normalize(normalized);
+                } catch (IllegalArgumentException e) {
+                    // Weka would fail on this node at prediction time
+                    return false;
+                }
+                System.arraycopy(normalized, 0, distribution, node * numClasses, numClasses);
+                hasDistribution[node] = true;
+            } else if (allowUnclassified) {
+                hasDistribution[node] = true;
+            }
+
+            if (att == -1) {
+                type[node] = LEAF;
+                return true;
+            }
+            type[node] = header.attribute(att).isNominal() ? NOMINAL : NUMERIC_BELOW;
+            attribute[node] = att;
+            threshold[node] = getField(treeClass, "m_SplitPoint", tree);
+
+            Object[] successors = getField(treeClass, "m_Successors", tree);
+            double[] prop = getField(treeClass, "m_Prop", tree);
+            int first = allocate(successors.length);
+            firstChild[node] = first;
+            numChildren[node] = successors.length;
+            for (int i = 0; i < successors.length; i++) {
+                missingWeight[first + i] = prop[i];
+                if (!fillRandomTree(first + i, successors[i], header, allowUnclassified)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Child a row goes to at a split node, or -1 if its value is missing
+         */
+        private int branch(int node, double[] row) {
+            double value = row[attribute[node]];
+            if (Double.isNaN(value)) {
+                return -1;
+            }
+            switch (type[node]) {
+                case NOMINAL:
+                    if ((int) value >= numChildren[node]) {
+                        // Weka fails the same way on a value the tree has no branch for
+                        throw new ArrayIndexOutOfBoundsException("No branch for value " + (int) value);
+                    }
+                    return firstChild[node] + (int) value;
+                case NOMINAL_EQUALS:
+                    return firstChild[node] + ((int) threshold[node] == (int) value ? 0 : 1);
+                case NUMERIC_AT_MOST:
+                    return firstChild[node] + (value <= threshold[node] ? 0 : 1);
+                default:
+                    return firstChild[node] + (value < threshold[node] ? 0 : 1);
+            }
+        }
+
+        /**
+         * ClassifierTree.getProbs for all classes at once: weight times the leaf's
+         * probabilities, or the weighted sum over the non-empty branches when the
+         * split attribute is missing
+         */
+        void j48Probs(int node, double[] row, double weight, double[] out) {
+            while (type[node] != LEAF) {
+                int child = branch(node, row);
+                if (child < 0) {
+                    double[] sub = new double[numClasses];
+                    for (int i = firstChild[node]; i < firstChild[node] + numChildren[node]; i++) {
+                        if (!empty[i]) {
+                            Arrays.fill(sub, 0);
+                            j48Probs(i, row, missingWeight[i] * weight, sub);
+                            for (int c = 0; c < numClasses; c++) {
+                                out[c] += sub[c];
+                            }
+                        }
+                    }
+                    return;
+                }
+                node = child;
+            }
+            int offset = node * numClasses;
+            for (int c = 0; c < numClasses; c++) {
+                out[c] = weight * distribution[offset + c];
+            }
+        }
+
+        /**
+         * RandomTree.Tree.distributionForInstance into out: the distribution of the
+         * deepest node on the row's path that has one, or the proportion-weighted sum
+         * over all branches when the split attribute is missing. False if there is none.
+         */
+        boolean randomTreeDistribution(int node, double[] row, double[] out) {
+            int found = -1;
+            while (true) {
+                if (hasDistribution[node]) {
+                    found = node;
+                }
+                if (type[node] == LEAF) {
+                    break;
+                }
+                int child = branch(node, row);
+                if (child < 0) {
+                    double[] sub = new double[numClasses];
+                    for (int i = firstChild[node]; i < firstChild[node] + numChildren[node]; i++) {
+                        Arrays.fill(sub, 0);
+                        if (randomTreeDistribution(i, row, sub)) {
+                            for (int c = 0; c < numClasses; c++) {
+                                out[c] += missingWeight[i] * sub[c];
+                            }
+                        }
+                    }
+                    return true;
+                }
+                node = child;
+            }
+            if (found < 0) {
+                return false;
+            }
+            System.arraycopy(distribution, found * numClasses, out, 0, numClasses);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.wekaproject;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializedObject;
+import weka.core.Utils;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single-row predictions from many threads at once. Weka classifiers (IBk, MLP,
+ * ...) and fitted filters keep scratch state while predicting, so each call
+ * borrows a private copy of the model and pipeline from a pool and returns it
+ * afterwards. Copies are made on demand, so there are as many as there were
+ * calls running at the same time, and no lock is shared between callers. Each
+ * copy also keeps its own input row, which is refilled instead of reallocated.
+ */
+public class ConcurrentPredictor {
+    private final Classifier model;
+    private final PreprocessingPipeline pipeline;
+    private final ConcurrentLinkedQueue<Copy> idleCopies = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger copyCount = new AtomicInteger();
+
+    /**
+     * @param model trained model; it is only copied, never used for predictions itself
+     * @param pipeline preprocessing the model's training data went through
+     */
+    public ConcurrentPredictor(Classifier model, PreprocessingPipeline pipeline) {
+        this.model = model;
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Index of the predicted class value, or missing if the model can't classify the row
+     *
+     * @param attributeValues values in original attribute order, as predictClass takes them
+     */
+    public double classify(double[] attributeValues) throws Exception {
+        Copy copy = borrow();
+        try {
+            return copy.model.classifyInstance(copy.prepare(attributeValues));
+        } finally {
+            idleCopies.add(copy);
+        }
+    }
+
+    /**
+     * Label of the predicted class value, as ClassificationEngine.predictClass returns it
+     */
+    public String predictClass(double[] attributeValues) throws Exception {
+        double prediction = classify(attributeValues);
+        return pipeline.getOutputHeader().classAttribute().value((int) prediction);
+    }
+
+    /**
+     * Class distribution of one row
+     *
+     * @param attributeValues values in original attribute order, as predictClass takes them
+     */
+    public double[] distribution(double[] attributeValues) throws Exception {
+        Copy copy = borrow();
+        try {
+            return copy.model.distributionForInstance(copy.prepare(attributeValues));
+        } finally {
+            idleCopies.add(copy);
+        }
+    }
+
+    /**
+     * Number of model copies made so far, i.e. the most calls that have run at once
+     */
+    public int getCopyCount() {
+        return copyCount.get();
+    }
+
+    private Copy borrow() throws Exception {
+        Copy copy = idleCopies.poll();
+        if (copy == null) {
+            synchronized (model) {
+                // Copies are serialized from the shared model, one at a time
+                copy = new Copy(model, pipeline);
+            }
+            copyCount.incrementAndGet();
+        }
+        return copy;
+    }
+
+    /**
+     * A private model and pipeline with a reusable input row, used by one thread at a time
+     */
+    private static class Copy {
+        private final Classifier model;
+        private final PreprocessingPipeline pipeline;
+        private final Instances inputHeader;
+        private final InputRow input;
+
+        Copy(Classifier model, PreprocessingPipeline pipeline) throws Exception {
+            // A compiled tree model is read-only and can be shared
+            this.model = model instanceof CompiledTreeModel ? model : AbstractClassifier.makeCopy(model);
+            this.pipeline = (PreprocessingPipeline) new SerializedObject(pipeline).getObject();
+            this.inputHeader = this.pipeline.getInputHeader();
+            this.input = new InputRow(inputHeader.numAttributes());
+        }
+
+        Instance prepare(double[] attributeValues) throws Exception {
+            // Build the row in the original attribute layout, then apply the same
+            // fitted filters the model's training data went through
+            input.fill(attributeValues, inputHeader.classIndex());
+            input.setDataset(inputHeader);
+            return pipeline.transform(input);
+        }
+    }
+
+    /**
+     * DenseInstance whose values are overwritten in place for the next row. Filters
+     * build new rows from their input, and classifiers only read theirs, so nothing
+     * keeps the row after a prediction.
+     */
+    private static class InputRow extends DenseInstance {
+        private static final long serialVersionUID = 1L;
+
+        InputRow(int numAttributes) {
+            super(1.0, new double[numAttributes]);
+        }
+
+        void fill(double[] attributeValues, int classIndex) {
+            for (int i = 0; i < m_AttValues.length; i++) {
+                m_AttValues[i] = i < attributeValues.length && i != classIndex
+                    ? attributeValues[i]
+                    : Utils.missingValue();
+            }
+        }
+    }
+}
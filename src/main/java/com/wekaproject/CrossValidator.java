@@ -0,0 +1,336 @@
+package com.wekaproject;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.AggregateableEvaluation;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.IterativeClassifier;
+import weka.classifiers.lazy.IBk;
+import weka.core.BatchPredictor;
+import weka.core.Instances;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * k-fold cross-validation that trains and tests the folds concurrently.
+ * Folds hold the same rows as in Evaluation.crossValidateModel (see FoldPlan), so
+ * the merged statistics are identical to the serial run for the same seed.
+ * Each fold can also report its timings and allocations as FoldMetrics.
+ * Thread interruption is checked between folds, between the iterations of
+ * iterative classifiers and while testing, so a run can be stopped part way.
+ */
+public class CrossValidator {
+    private final ExecutorService executor;
+
+    /**
+     * @param executor pool the folds run on, or null to run them on the calling thread
+     */
+    public CrossValidator(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public Evaluation crossValidate(Classifier classifier, Instances data, int numFolds, Random random) throws Exception {
+        return crossValidate(classifier, data, numFolds, random, null);
+    }
+
+    /**
+     * @param foldMetrics if not null, receives the metrics of every fold in fold order
+     */
+    public Evaluation crossValidate(Classifier classifier, Instances data, int numFolds, Random random,
+                                    List<FoldMetrics> foldMetrics) throws Exception {
+        return crossValidate(classifier, data, FoldPlan.create(data, numFolds, random), foldMetrics);
+    }
+
+    /**
+     * Cross-validate on folds planned in advance. The folds are views on the rows of
+     * data, so several approaches evaluated on the same data share one plan and no
+     * fold is copied.
+     *
+     * @param foldMetrics if not null, receives the metrics of every fold in fold order
+     */
+    public Evaluation crossValidate(Classifier classifier, Instances data, FoldPlan plan,
+                                    List<FoldMetrics> foldMetrics) throws Exception {
+        if (!plan.fits(data)) {
+            throw new IllegalArgumentException("Fold plan was made for a dataset with a different number of rows");
+        }
+
+        List<Callable<FoldResult>> folds = new ArrayList<>();
+        for (int i = 0; i < plan.getNumFolds(); i++) {
+            Instances train = plan.trainFold(data, i);
+            Instances test = plan.testFold(data, i);
+            Classifier copy = AbstractClassifier.makeCopy(classifier);
+            // Serializing every fold model would cost more than it tells, the first one is representative
+            boolean measureModel = i == 0;
+            folds.add(() -> evaluateFold(copy, data, train, test, measureModel));
+        }
+
+        AggregateableEvaluation merged = new AggregateableEvaluation(data);
+        for (FoldResult fold : runFolds(folds)) {
+            merged.aggregate(fold.evaluation);
+            if (foldMetrics != null) {
+                foldMetrics.add(fold.metrics);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Train and test one fold of a plan on the calling thread, for callers that
+     * schedule the folds themselves
+     *
+     * @param foldMetrics if not null, receives the metrics of the fold
+     */
+    public static Evaluation crossValidateFold(Classifier classifier, Instances data, FoldPlan plan, int fold,
+                                               List<FoldMetrics> foldMetrics) throws Exception {
+        if (!plan.fits(data)) {
+            throw new IllegalArgumentException("Fold plan was made for a dataset with a different number of rows");
+        }
+        FoldResult result = evaluateFold(AbstractClassifier.makeCopy(classifier), data,
+            plan.trainFold(data, fold), plan.testFold(data, fold), fold == 0);
+        if (foldMetrics != null) {
+            foldMetrics.add(result.metrics);
+        }
+        return result.evaluation;
+    }
+
+    /**
+     * Cross-validate IBk for several K values at once: every fold builds one model and
+     * queries the largest K once per test row (see MultiKIBk). The results equal
+     * separate runs with each K. The fold timings are those of the shared pass and are
+     * reported for every K alike.
+     *
+     * @param foldMetrics if not null, receives one list of fold metrics per K, in the order of ks
+     * @return one evaluation per K, in the order of ks
+     */
+    public Evaluation[] crossValidateMultiK(IBk prototype, int[] ks, Instances data, FoldPlan plan,
+                                            List<List<FoldMetrics>> foldMetrics) throws Exception {
+        if (!plan.fits(data)) {
+            throw new IllegalArgumentException("Fold plan was made for a dataset with a different number of rows");
+        }
+        int maxK = 1;
+        for (int k : ks) {
+            maxK = Math.max(maxK, k);
+        }
+
+        List<Callable<MultiKFoldResult>> folds = new ArrayList<>();
+        for (int i = 0; i < plan.getNumFolds(); i++) {
+            Instances train = plan.trainFold(data, i);
+            Instances test = plan.testFold(data, i);
+            MultiKIBk model = MultiKIBk.forKs(prototype, maxK);
+            boolean measureModel = i == 0;
+            folds.add(() -> evaluateMultiKFold(model, ks, data, train, test, measureModel));
+        }
+
+        AggregateableEvaluation[] merged = new AggregateableEvaluation[ks.length];
+        for (int j = 0; j < ks.length; j++) {
+            merged[j] = new AggregateableEvaluation(data);
+            if (foldMetrics != null) {
+                foldMetrics.add(new ArrayList<>());
+            }
+        }
+        for (MultiKFoldResult fold : runFolds(folds)) {
+            for (int j = 0; j < ks.length; j++) {
+                merged[j].aggregate(fold.evaluations[j]);
+                if (foldMetrics != null) {
+                    foldMetrics.get(j).add(fold.metrics[j]);
+                }
+            }
+        }
+        return merged;
+    }
+
+    private <T> List<T> runFolds(List<Callable<T>> folds) throws Exception {
+        List<T> foldResults = new ArrayList<>();
+        if (executor == null) {
+            for (Callable<T> fold : folds) {
+                checkInterrupted();
+                foldResults.add(fold.call());
+            }
+            return foldResults;
+        }
+
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> fold : folds) {
+            futures.add(executor.submit(fold));
+        }
+        try {
+            for (Future<T> future : futures) {
+                foldResults.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return foldResults;
+    }
+
+    private static FoldResult evaluateFold(Classifier classifier, Instances header, Instances train,
+                                           Instances test, boolean measureModel) throws Exception {
+        long allocatedBefore = currentThreadAllocatedBytes();
+        long start = System.nanoTime();
+
+        Evaluation eval = new Evaluation(header);
+        eval.setPriors(train);
+        build(classifier, train);
+        long trained = System.nanoTime();
+        evaluate(eval, classifier, test);
+        long evaluated = System.nanoTime();
+
+        long allocatedAfter = currentThreadAllocatedBytes();
+        long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+        FoldMetrics metrics = new FoldMetrics(
+            eval.pctCorrect(),
+            (trained - start) / 1_000_000,
+            (evaluated - trained) / 1_000_000,
+            allocated,
+            measureModel ? serializedSize(classifier) : -1
+        );
+        return new FoldResult(eval, metrics);
+    }
+
+    private static MultiKFoldResult evaluateMultiKFold(MultiKIBk model, int[] ks, Instances header, Instances train,
+                                                       Instances test, boolean measureModel) throws Exception {
+        long allocatedBefore = currentThreadAllocatedBytes();
+        long start = System.nanoTime();
+
+        Evaluation[] evals = new Evaluation[ks.length];
+        for (int j = 0; j < ks.length; j++) {
+            evals[j] = new Evaluation(header);
+            evals[j].setPriors(train);
+        }
+        model.buildClassifier(train);
+        long trained = System.nanoTime();
+        double[][][] distributions = model.distributionsForKs(test, ks);
+        for (int i = 0; i < test.numInstances(); i++) {
+            for (int j = 0; j < ks.length; j++) {
+                evals[j].evaluateModelOnceAndRecordPrediction(distributions[i][j], test.instance(i));
+            }
+        }
+        long evaluated = System.nanoTime();
+
+        long allocatedAfter = currentThreadAllocatedBytes();
+        long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+        long modelSize = measureModel ? serializedSize(model) : -1;
+        FoldMetrics[] metrics = new FoldMetrics[ks.length];
+        for (int j = 0; j < ks.length; j++) {
+            metrics[j] = new FoldMetrics(
+                evals[j].pctCorrect(),
+                (trained - start) / 1_000_000,
+                (evaluated - trained) / 1_000_000,
+                allocated,
+                modelSize
+            );
+        }
+        return new MultiKFoldResult(evals, metrics);
+    }
+
+    private static void build(Classifier classifier, Instances train) throws Exception {
+        if (!(classifier instanceof IterativeClassifier)) {
+            classifier.buildClassifier(train);
+            return;
+        }
+        // Same steps as buildClassifier, with a chance to stop after every iteration
+        IterativeClassifier iterative = (IterativeClassifier) classifier;
+        iterative.initializeClassifier(train);
+        while (iterative.next()) {
+            checkInterrupted();
+        }
+        iterative.done();
+    }
+
+    private static void evaluate(Evaluation eval, Classifier classifier, Instances test) throws Exception {
+        if (classifier instanceof BatchPredictor
+            && ((BatchPredictor) classifier).implementsMoreEfficientBatchPrediction()) {
+            eval.evaluateModel(classifier, test);
+            return;
+        }
+        // Row by row, as evaluateModel does it for non-batch classifiers
+        for (int i = 0; i < test.numInstances(); i++) {
+            if ((i & 63) == 0) {
+                checkInterrupted();
+            }
+            eval.evaluateModelOnceAndRecordPrediction(classifier, test.instance(i));
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Cross-validation interrupted");
+        }
+    }
+
+    /**
+     * Bytes allocated so far by the current thread, or -1 if the JVM doesn't count them
+     */
+    private static long currentThreadAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getCurrentThreadAllocatedBytes();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Size of the model in Java serialization form, or -1 if it can't be serialized
+     */
+    static long serializedSize(Object model) {
+        CountingStream counter = new CountingStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+            out.writeObject(model);
+        } catch (IOException e) {
+            return -1;
+        }
+        return counter.count;
+    }
+
+    private static class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    private static class MultiKFoldResult {
+        final Evaluation[] evaluations;
+        final FoldMetrics[] metrics;
+
+        MultiKFoldResult(Evaluation[] evaluations, FoldMetrics[] metrics) {
+            this.evaluations = evaluations;
+            this.metrics = metrics;
+        }
+    }
+
+    private static class FoldResult {
+        final Evaluation evaluation;
+        final FoldMetrics metrics;
+
+        FoldResult(Evaluation evaluation, FoldMetrics metrics) {
+            this.evaluation = evaluation;
+            this.metrics = metrics;
+        }
+    }
+}
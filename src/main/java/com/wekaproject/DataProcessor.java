@@ -1,33 +1,200 @@
 package com.wekaproject;
 
+import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.converters.ArffLoader;
 import weka.core.converters.ConverterUtils.DataSource;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Discretize;
 import weka.filters.unsupervised.attribute.NominalToBinary;
 import weka.filters.unsupervised.attribute.Normalize;
 
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
 public class DataProcessor {
     private Instances originalData;
     private String datasetPath;
+    private DatasetFingerprint fingerprint;
+
+    // Derived views are computed once and shared read-only, together with the
+    // filters fitted while computing them
+    private Instances nominalData;
+    private Instances binaryData;
+    private Instances numericNormalizedData;
+    private Discretize discretizeFilter;
+    private NominalToBinary nominalToBinaryFilter;
+    private Normalize normalizeFilter;
+
+    // Set -Dwekaproject.columnarCache=false to always parse the source file
+    private static final boolean USE_COLUMNAR_CACHE =
+        Boolean.parseBoolean(System.getProperty("wekaproject.columnarCache", "true"));
+
+    // Set -Dwekaproject.columnarViews=false to keep the numeric views as one DenseInstance per row
+    private static final boolean USE_COLUMNAR_VIEWS =
+        Boolean.parseBoolean(System.getProperty("wekaproject.columnarViews", "true"));
 
     public DataProcessor(String datasetPath) throws Exception {
         this.datasetPath = datasetPath;
-        loadData();
+        if (!loadCachedData()) {
+            loadData();
+            writeCachedData();
+        }
+    }
+
+    /**
+     * Load a dataset that was already inspected, reusing its parsed header
+     */
+    public DataProcessor(DatasetInspector inspector) throws Exception {
+        this.datasetPath = inspector.getDatasetPath();
+        if (loadCachedData()) {
+            return;
+        }
+        if (inspector.getDataOffset() < 0) {
+            loadData();
+        } else {
+            loadData(inspector);
+        }
+        writeCachedData();
+    }
+
+    /**
+     * Load the data from the columnar cache next to the dataset, if it is still current
+     */
+    private boolean loadCachedData() {
+        if (!USE_COLUMNAR_CACHE) {
+            return false;
+        }
+        try {
+            ColumnarCache.Cached cached = ColumnarCache.load(datasetPath);
+            if (cached != null) {
+                originalData = cached.getData();
+                fingerprint = cached.getFingerprint();
+                return true;
+            }
+        } catch (Exception e) {
+            System.err.println("Ignoring unreadable dataset cache: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Store the parsed data in the columnar cache. A failure here only costs the next load its speed-up.
+     */
+    private void writeCachedData() {
+        if (!USE_COLUMNAR_CACHE) {
+            return;
+        }
+        try {
+            ColumnarCache.write(datasetPath, originalData, getFingerprint());
+        } catch (Exception e) {
+            System.err.println("Could not write dataset cache: " + e.getMessage());
+        }
     }
 
     private void loadData() throws Exception {
         DataSource source = new DataSource(datasetPath);
-        originalData = source.getDataSet();
+        Instances data = source.getDataSet();
         
         // Set class index to last attribute if not set
-        if (originalData.classIndex() == -1) {
-            originalData.setClassIndex(originalData.numAttributes() - 1);
+        if (data.classIndex() == -1) {
+            data.setClassIndex(data.numAttributes() - 1);
+        }
+
+        originalData = ReadOnlyInstances.of(data);
+    }
+
+    private void loadData(DatasetInspector inspector) throws Exception {
+        // Start reading right after @data with the known header, and size the
+        // row list from the row count the inspector already has
+        Instances header = inspector.getStructure();
+        List<Instance> rows = new ArrayList<>(inspector.getNumInstances());
+
+        try (InputStream in = Files.newInputStream(Path.of(datasetPath))) {
+            in.skipNBytes(inspector.getDataOffset());
+            Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            ArffLoader.ArffReader arff = new ArffLoader.ArffReader(reader, header, 0, 0, true);
+
+            Instance instance;
+            while ((instance = arff.readInstance(header)) != null) {
+                rows.add(instance);
+            }
         }
+
+        originalData = ReadOnlyInstances.of(header, rows);
     }
 
+    /**
+     * Shared read-only view of the loaded data. Use getMutableCopy to get data that can be changed.
+     */
     public Instances getOriginalData() {
-        return new Instances(originalData);
+        return originalData;
+    }
+
+    /**
+     * Shared read-only form of the data for the given view, computed on first use
+     */
+    public Instances getView(DataView view) throws Exception {
+        switch (view) {
+            case ORIGINAL:
+                return getOriginalData();
+            case NOMINAL:
+                return numericToNominal();
+            case NUMERIC_NORMALIZED:
+                return toNumericNormalized();
+            default:
+                throw new IllegalArgumentException("Unknown view: " + view);
+        }
+    }
+
+    /**
+     * Private, modifiable copy of the given view
+     */
+    public Instances getMutableCopy(DataView view) throws Exception {
+        return new Instances(getView(view));
+    }
+
+    /**
+     * Filters fitted while computing the given view, in the order they were applied
+     */
+    public synchronized java.util.List<Filter> getFittedFilters(DataView view) throws Exception {
+        getView(view);
+
+        java.util.List<Filter> filters = new java.util.ArrayList<>();
+        switch (view) {
+            case NOMINAL:
+                filters.add(discretizeFilter);
+                break;
+            case NUMERIC_NORMALIZED:
+                filters.add(nominalToBinaryFilter);
+                filters.add(normalizeFilter);
+                break;
+            default:
+                break;
+        }
+        return filters;
+    }
+
+    public String getDatasetPath() {
+        return datasetPath;
+    }
+
+    /**
+     * Fingerprint of the dataset file, taken from the columnar cache or else hashed
+     * once on first use, and shared by the cache, the evaluation cache and the model store
+     */
+    public synchronized DatasetFingerprint getFingerprint() throws java.io.IOException {
+        if (fingerprint == null) {
+            fingerprint = DatasetFingerprint.of(Path.of(datasetPath));
+        }
+        return fingerprint;
     }
 
     public int getNumInstances() {
@@ -39,29 +206,36 @@ public class DataProcessor {
     }
 
     /**
-     * Convert all nominal attributes (except class) to binary
+     * Convert all nominal attributes (except class) to binary.
+     * The result is shared and read-only.
      */
-    public Instances nominalToBinary() throws Exception {
-        Instances data = new Instances(originalData);
-        
+    public synchronized Instances nominalToBinary() throws Exception {
+        if (binaryData == null) {
+            binaryData = shareNumeric(applyNominalToBinary());
+        }
+        return binaryData;
+    }
+
+    private Instances applyNominalToBinary() throws Exception {
         NominalToBinary filter = new NominalToBinary();
-        filter.setInputFormat(data);
-        data = Filter.useFilter(data, filter);
-        
+        filter.setInputFormat(originalData);
+        Instances data = Filter.useFilter(originalData, filter);
+        nominalToBinaryFilter = filter;
         return data;
     }
 
     /**
-     * Convert all numeric attributes to nominal using discretization
+     * Convert all numeric attributes to nominal using discretization.
+     * The result is shared and read-only.
      */
-    public Instances numericToNominal() throws Exception {
-        Instances data = new Instances(originalData);
-        
-        Discretize filter = new Discretize();
-        filter.setInputFormat(data);
-        data = Filter.useFilter(data, filter);
-        
-        return data;
+    public synchronized Instances numericToNominal() throws Exception {
+        if (nominalData == null) {
+            Discretize filter = new Discretize();
+            filter.setInputFormat(originalData);
+            nominalData = ReadOnlyInstances.of(Filter.useFilter(originalData, filter));
+            discretizeFilter = filter;
+        }
+        return nominalData;
     }
 
     /**
@@ -76,11 +250,38 @@ public class DataProcessor {
     }
 
     /**
-     * Convert to numeric (NominalToBinary) and normalize
+     * Convert to numeric (NominalToBinary) and normalize.
+     * The result is shared and read-only.
+     */
+    public synchronized Instances toNumericNormalized() throws Exception {
+        if (numericNormalizedData == null) {
+            // Only keep the intermediate binary data if someone asked for it
+            Instances binary = binaryData != null ? binaryData : applyNominalToBinary();
+
+            Normalize filter = new Normalize();
+            filter.setInputFormat(binary);
+            numericNormalizedData = shareNumeric(Filter.useFilter(binary, filter));
+            normalizeFilter = filter;
+        }
+        return numericNormalizedData;
+    }
+
+    /**
+     * The numeric normalized view as columns, one double[] per attribute
      */
-    public Instances toNumericNormalized() throws Exception {
-        Instances data = nominalToBinary();
-        return normalize(data);
+    public NumericColumns toNumericColumns() throws Exception {
+        Instances data = toNumericNormalized();
+        return data instanceof ColumnarInstances ? ((ColumnarInstances) data).getColumns() : NumericColumns.of(data);
+    }
+
+    /**
+     * Shared read-only form of a numeric view, backed by columns unless switched off
+     */
+    private static Instances shareNumeric(Instances data) {
+        if (USE_COLUMNAR_VIEWS && NumericColumns.supports(data)) {
+            return new ColumnarInstances(NumericColumns.of(data));
+        }
+        return ReadOnlyInstances.of(data);
     }
 
     /**
@@ -0,0 +1,13 @@
+package com.wekaproject;
+
+/**
+ * The preprocessed forms of the dataset the approaches are trained on
+ */
+public enum DataView {
+    /** Data as loaded from the file */
+    ORIGINAL,
+    /** Numeric attributes discretized into nominal ones */
+    NOMINAL,
+    /** Nominal attributes binarized, then everything normalized to [0, 1] */
+    NUMERIC_NORMALIZED
+}
@@ -0,0 +1,94 @@
+package com.wekaproject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identifies the exact contents of a dataset file: its size, modification time and
+ * SHA-256 hash. Size and time are checked first, so an unchanged file is recognised
+ * without reading it; the hash is only recomputed when the time moved but the size
+ * did not (a touched or copied file).
+ */
+public class DatasetFingerprint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long size;
+    private final long lastModified;
+    private final String contentHash;
+
+    public DatasetFingerprint(long size, long lastModified, String contentHash) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Fingerprint a file, hashing its whole content
+     */
+    public static DatasetFingerprint of(Path file) throws IOException {
+        return new DatasetFingerprint(
+            Files.size(file),
+            Files.getLastModifiedTime(file).toMillis(),
+            hash(file)
+        );
+    }
+
+    /**
+     * Whether the file still has the contents this fingerprint was taken from
+     */
+    public boolean matches(Path file) throws IOException {
+        long currentSize = Files.size(file);
+        if (currentSize != size) {
+            return false;
+        }
+        if (Files.getLastModifiedTime(file).toMillis() == lastModified) {
+            return true;
+        }
+        return hash(file).equals(contentHash);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[1 << 20];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    @Override
+    public String toString() {
+        return contentHash;
+    }
+}
@@ -0,0 +1,153 @@
+package com.wekaproject;
+
+import weka.core.Instances;
+import weka.core.converters.ArffLoader;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Cheap look at an ARFF file: parses only the header and counts the data rows with
+ * a memory-mapped newline scan, without creating any Instance objects. The parsed
+ * header and the offset of the data section can be handed on to DataProcessor so
+ * the header is not parsed again when the data is loaded.
+ */
+public class DatasetInspector {
+    // Size of each mapped window; a single mapping is limited to 2 GB
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    private final String datasetPath;
+    private final Instances structure;
+    private final long dataOffset;
+    private final long numInstances;
+
+    public DatasetInspector(String datasetPath) throws Exception {
+        this.datasetPath = datasetPath;
+        Path path = Path.of(datasetPath);
+
+        if (!datasetPath.toLowerCase(Locale.ROOT).endsWith(".arff")) {
+            // Compressed files can't be mapped, so stream them instead
+            ArffStream stream = new ArffStream(datasetPath);
+            this.structure = stream.getStructure();
+            this.dataOffset = -1;
+            this.numInstances = stream.getNumInstances();
+            return;
+        }
+
+        String header;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            this.dataOffset = readHeader(in, headerBytes);
+            header = headerBytes.toString(StandardCharsets.UTF_8);
+        }
+
+        ArffLoader.ArffReader reader = new ArffLoader.ArffReader(new StringReader(header), 1, false);
+        this.structure = reader.getStructure();
+
+        // Set class index to last attribute if not set
+        if (structure.classIndex() == -1) {
+            structure.setClassIndex(structure.numAttributes() - 1);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.numInstances = countRows(channel, dataOffset);
+        }
+    }
+
+    /**
+     * Copy header lines up to and including the @data line.
+     *
+     * @return byte offset of the first data line
+     */
+    private static long readHeader(InputStream in, ByteArrayOutputStream header) throws Exception {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long offset = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            offset++;
+            line.write(b);
+            if (b == '\n') {
+                header.write(line.toByteArray());
+                if (isDataKeyword(line)) {
+                    return offset;
+                }
+                line.reset();
+            }
+        }
+        throw new Exception("No @data section found");
+    }
+
+    private static boolean isDataKeyword(ByteArrayOutputStream line) {
+        String text = line.toString(StandardCharsets.UTF_8).trim().toLowerCase(Locale.ROOT);
+        return text.equals("@data");
+    }
+
+    /**
+     * Count non-empty, non-comment lines from the given offset to the end of the file
+     */
+    private static long countRows(FileChannel channel, long from) throws Exception {
+        long size = channel.size();
+        long rows = 0;
+        boolean hasContent = false;
+        boolean isComment = false;
+
+        for (long position = from; position < size; position += WINDOW_SIZE) {
+            MappedByteBuffer window = channel.map(
+                FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position)
+            );
+            int limit = window.limit();
+            for (int i = 0; i < limit; i++) {
+                byte b = window.get(i);
+                if (b == '\n') {
+                    if (hasContent && !isComment) {
+                        rows++;
+                    }
+                    hasContent = false;
+                    isComment = false;
+                } else if (!hasContent && b != ' ' && b != '\t' && b != '\r') {
+                    hasContent = true;
+                    isComment = b == '%';
+                }
+            }
+        }
+        if (hasContent && !isComment) {
+            rows++;
+        }
+        return rows;
+    }
+
+    public String getDatasetPath() {
+        return datasetPath;
+    }
+
+    /**
+     * Header of the dataset, without rows
+     */
+    public Instances getStructure() {
+        return new Instances(structure, 0);
+    }
+
+    public int getNumAttributes() {
+        return structure.numAttributes();
+    }
+
+    public int getNumInstances() {
+        return (int) Math.min(Integer.MAX_VALUE, numInstances);
+    }
+
+    /**
+     * Byte offset of the first line after @data, or -1 if the file could not be mapped
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+}
@@ -1,5 +1,7 @@
 package com.wekaproject;
 
+import weka.core.Instances;
+
 import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
@@ -7,24 +9,32 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Form for predicting the class of one row with the engine's best model. The form
+ * is built from the model's input header; the example values under each field need
+ * the dataset's rows and are filled in once they are loaded in the background.
+ */
 public class DiscoverPanel extends JPanel {
     private ClassificationEngine engine;
-    private DataProcessor dataProcessor;
+    private Instances header;
     private List<JComponent> inputComponents;
     private Map<Integer, JComponent> attributeInputMap;
+    private Map<Integer, JLabel> exampleLabels;
     private JLabel resultLabel;
     private JButton predictButton;
 
-    public DiscoverPanel(ClassificationEngine engine) {
+    public DiscoverPanel(ClassificationEngine engine) throws Exception {
         this.engine = engine;
-        this.dataProcessor = engine.getDataProcessor();
+        this.header = engine.getInputHeader();
         this.inputComponents = new ArrayList<>();
         this.attributeInputMap = new HashMap<>();
+        this.exampleLabels = new HashMap<>();
 
         setLayout(new BorderLayout(10, 10));
         setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
         initComponents();
+        loadExamples();
     }
 
     private void initComponents() {
@@ -43,11 +53,11 @@ public class DiscoverPanel extends JPanel {
         formPanel.setLayout(new BoxLayout(formPanel, BoxLayout.Y_AXIS));
         formPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
-        List<String> attributeNames = dataProcessor.getAttributeNames();
-
-        for (int i = 0; i < attributeNames.size(); i++) {
-            String attrName = attributeNames.get(i);
-            int attrIndex = dataProcessor.getAttributeIndex(attrName);
+        for (int attrIndex = 0; attrIndex < header.numAttributes(); attrIndex++) {
+            if (attrIndex == header.classIndex()) {
+                continue;
+            }
+            String attrName = header.attribute(attrIndex).name();
 
             // Main row panel containing attribute name, input, and examples
             JPanel rowPanel = new JPanel();
@@ -66,14 +76,14 @@ public class DiscoverPanel extends JPanel {
             // Input component
             JComponent inputComponent;
 
-            if (dataProcessor.isNumericAttribute(attrIndex)) {
+            if (header.attribute(attrIndex).isNumeric()) {
                 // Numeric attribute - use text field
                 JTextField textField = new JTextField();
                 textField.setPreferredSize(new Dimension(200, 25));
                 inputComponent = textField;
             } else {
                 // Nominal attribute - use combo box
-                List<String> nominalValues = dataProcessor.getNominalValues(attrIndex);
+                List<String> nominalValues = nominalValues(attrIndex);
                 JComboBox<String> comboBox = new JComboBox<>(nominalValues.toArray(new String[0]));
                 comboBox.setPreferredSize(new Dimension(200, 25));
                 inputComponent = comboBox;
@@ -81,20 +91,16 @@ public class DiscoverPanel extends JPanel {
 
             inputRow.add(inputComponent, BorderLayout.CENTER);
 
-            // Second row: example values
-            List<String> sampleValues = dataProcessor.getSampleValues(attrIndex, 3);
-            if (!sampleValues.isEmpty()) {
-                JPanel exampleRow = new JPanel(new BorderLayout());
-                JLabel exampleLabel = new JLabel("   Examples: " + String.join(", ", sampleValues));
-                exampleLabel.setFont(new Font("Arial", Font.ITALIC, 10));
-                exampleLabel.setForeground(new Color(100, 100, 100));
-                exampleRow.add(exampleLabel, BorderLayout.WEST);
-
-                rowPanel.add(inputRow);
-                rowPanel.add(exampleRow);
-            } else {
-                rowPanel.add(inputRow);
-            }
+            // Second row: example values, filled in by loadExamples
+            JPanel exampleRow = new JPanel(new BorderLayout());
+            JLabel exampleLabel = new JLabel(" ");
+            exampleLabel.setFont(new Font("Arial", Font.ITALIC, 10));
+            exampleLabel.setForeground(new Color(100, 100, 100));
+            exampleRow.add(exampleLabel, BorderLayout.WEST);
+            exampleLabels.put(attrIndex, exampleLabel);
+
+            rowPanel.add(inputRow);
+            rowPanel.add(exampleRow);
 
             formPanel.add(rowPanel);
 
@@ -136,6 +142,47 @@ public class DiscoverPanel extends JPanel {
         add(bottomPanel, BorderLayout.SOUTH);
     }
 
+    /**
+     * Show a few values of each attribute from the dataset, loading it off the EDT
+     * if the engine was restored from a saved model without it
+     */
+    private void loadExamples() {
+        SwingWorker<Map<Integer, List<String>>, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Map<Integer, List<String>> doInBackground() throws Exception {
+                DataProcessor dataProcessor = engine.getDataProcessor();
+                Map<Integer, List<String>> examples = new HashMap<>();
+                for (Integer attrIndex : exampleLabels.keySet()) {
+                    examples.put(attrIndex, dataProcessor.getSampleValues(attrIndex, 3));
+                }
+                return examples;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get().forEach((attrIndex, sampleValues) -> {
+                        if (!sampleValues.isEmpty()) {
+                            exampleLabels.get(attrIndex).setText("   Examples: " + String.join(", ", sampleValues));
+                        }
+                    });
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.err.println("Could not load example values: " + cause.getMessage());
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private List<String> nominalValues(int attrIndex) {
+        List<String> values = new ArrayList<>();
+        for (int v = 0; v < header.attribute(attrIndex).numValues(); v++) {
+            values.add(header.attribute(attrIndex).value(v));
+        }
+        return values;
+    }
+
     private void performPrediction() {
         if (!engine.isTrained()) {
             JOptionPane.showMessageDialog(
@@ -149,15 +196,16 @@ public class DiscoverPanel extends JPanel {
 
         try {
             // Collect and validate input values
-            List<String> attributeNames = dataProcessor.getAttributeNames();
-            double[] attributeValues = new double[attributeNames.size()];
+            double[] attributeValues = new double[header.numAttributes() - 1];
 
-            for (int i = 0; i < attributeNames.size(); i++) {
-                String attrName = attributeNames.get(i);
-                int attrIndex = dataProcessor.getAttributeIndex(attrName);
+            for (int attrIndex = 0; attrIndex < header.numAttributes(); attrIndex++) {
+                if (attrIndex == header.classIndex()) {
+                    continue;
+                }
+                String attrName = header.attribute(attrIndex).name();
                 JComponent component = attributeInputMap.get(attrIndex);
 
-                if (dataProcessor.isNumericAttribute(attrIndex)) {
+                if (header.attribute(attrIndex).isNumeric()) {
                     // Numeric attribute
                     JTextField textField = (JTextField) component;
                     String text = textField.getText().trim();
@@ -201,8 +249,7 @@ public class DiscoverPanel extends JPanel {
                     }
 
                     // Get the index of the selected nominal value
-                    List<String> nominalValues = dataProcessor.getNominalValues(attrIndex);
-                    attributeValues[attrIndex] = nominalValues.indexOf(selectedValue);
+                    attributeValues[attrIndex] = header.attribute(attrIndex).indexOfValue(selectedValue);
                 }
             }
 
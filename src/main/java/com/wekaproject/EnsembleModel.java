@@ -0,0 +1,288 @@
+package com.wekaproject;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.functions.Logistic;
+import weka.core.Attribute;
+import weka.core.BatchPredictor;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Several trained approaches predicting together. Each member keeps the
+ * preprocessing pipeline of its own data view, so the ensemble takes rows in the
+ * original attribute layout. The member distributions are combined by a vote
+ * weighted with each member's cross-validated accuracy, or by a logistic
+ * regression stacked on the members' out-of-fold distributions.
+ *
+ * The members of one prediction run at the same time, so a prediction takes about
+ * as long as the slowest member. Like any Weka classifier, one instance must only
+ * be used by one caller at a time; ConcurrentPredictor and BatchScorer copy it.
+ */
+public class EnsembleModel extends AbstractClassifier {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * How the member distributions become the ensemble's distribution
+     */
+    public enum Combination { WEIGHTED_VOTE, STACKING }
+
+    // Members are CPU-bound and short, one virtual thread each per prediction is cheap enough
+    private static final ExecutorService MEMBER_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Member[] members;
+    private final Combination combination;
+    private final int numClasses;
+    private Logistic metaModel;
+    private Instances metaHeader;
+    private boolean parallelMembers = true;
+
+    /**
+     * @param members trained members, best first
+     * @param combination STACKING also needs buildMetaModel before predicting
+     */
+    public EnsembleModel(List<Member> members, Combination combination) {
+        this.members = members.toArray(new Member[0]);
+        this.combination = combination;
+        this.numClasses = this.members[0].pipeline.getOutputHeader().numClasses();
+    }
+
+    /**
+     * Train the stacking model on out-of-fold predictions of the members
+     *
+     * @param predictions per member, the distribution of every training row from the
+     *                    fold that held it out; rows in the same order for all members
+     * @param classAttribute class attribute of the original data
+     * @param classValues true class of every row, in the same order
+     */
+    public void buildMetaModel(double[][][] predictions, Attribute classAttribute, double[] classValues) throws Exception {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (Member member : members) {
+            for (int c = 0; c < numClasses; c++) {
+                attributes.add(new Attribute(member.name + " p(" + classAttribute.value(c) + ")"));
+            }
+        }
+        attributes.add(classAttribute.copy(classAttribute.name()));
+        Instances meta = new Instances("stacking", attributes, classValues.length);
+        meta.setClassIndex(attributes.size() - 1);
+
+        for (int row = 0; row < classValues.length; row++) {
+            double[][] rowPredictions = new double[members.length][];
+            for (int m = 0; m < members.length; m++) {
+                rowPredictions[m] = predictions[m][row];
+            }
+            Instance instance = metaInstance(rowPredictions, meta);
+            instance.setClassValue(classValues[row]);
+            meta.add(instance);
+        }
+
+        Logistic model = new Logistic();
+        model.buildClassifier(meta);
+        metaModel = model;
+        metaHeader = new Instances(meta, 0);
+    }
+
+    /**
+     * Evaluate the members of a prediction one after another instead of at the same
+     * time, e.g. when the caller already predicts on one thread per core
+     */
+    public void setParallelMembers(boolean parallelMembers) {
+        this.parallelMembers = parallelMembers;
+    }
+
+    public boolean getParallelMembers() {
+        return parallelMembers;
+    }
+
+    public Combination getCombination() {
+        return combination;
+    }
+
+    public int getNumMembers() {
+        return members.length;
+    }
+
+    /**
+     * Name for results and reports, e.g. "Ensemble (weighted vote): J48, Random Forest"
+     */
+    public String getDisplayName() {
+        StringBuilder name = new StringBuilder("Ensemble (")
+            .append(combination == Combination.STACKING ? "stacking" : "weighted vote")
+            .append("): ");
+        for (int m = 0; m < members.length; m++) {
+            name.append(m > 0 ? ", " : "").append(members[m].name);
+        }
+        return name.toString();
+    }
+
+    @Override
+    public void buildClassifier(Instances data) throws Exception {
+        throw new Exception("An ensemble is assembled from trained members and can't be retrained");
+    }
+
+    @Override
+    public double[] distributionForInstance(Instance instance) throws Exception {
+        double[][] memberDistributions = new double[members.length][];
+        if (!parallelMembers || members.length == 1) {
+            for (int m = 0; m < members.length; m++) {
+                memberDistributions[m] = members[m].distribution(instance);
+            }
+        } else {
+            List<Future<double[]>> others = new ArrayList<>();
+            for (int m = 1; m < members.length; m++) {
+                Member member = members[m];
+                others.add(MEMBER_EXECUTOR.submit(() -> member.distribution(instance)));
+            }
+            // The calling thread takes the first member instead of just waiting
+            memberDistributions[0] = members[0].distribution(instance);
+            for (int m = 1; m < members.length; m++) {
+                memberDistributions[m] = await(others.get(m - 1));
+            }
+        }
+        return combine(memberDistributions);
+    }
+
+    @Override
+    public boolean implementsMoreEfficientBatchPrediction() {
+        return true;
+    }
+
+    /**
+     * Each member scores the whole batch, all members at the same time
+     */
+    @Override
+    public double[][] distributionsForInstances(Instances batch) throws Exception {
+        double[][][] memberDistributions = new double[members.length][][];
+        if (!parallelMembers || members.length == 1) {
+            for (int m = 0; m < members.length; m++) {
+                memberDistributions[m] = members[m].distributions(batch);
+            }
+        } else {
+            List<Future<double[][]>> others = new ArrayList<>();
+            for (int m = 1; m < members.length; m++) {
+                Member member = members[m];
+                others.add(MEMBER_EXECUTOR.submit(() -> member.distributions(batch)));
+            }
+            memberDistributions[0] = members[0].distributions(batch);
+            for (int m = 1; m < members.length; m++) {
+                memberDistributions[m] = await(others.get(m - 1));
+            }
+        }
+
+        double[][] distributions = new double[batch.numInstances()][];
+        double[][] rowDistributions = new double[members.length][];
+        for (int i = 0; i < distributions.length; i++) {
+            for (int m = 0; m < members.length; m++) {
+                rowDistributions[m] = memberDistributions[m][i];
+            }
+            distributions[i] = combine(rowDistributions);
+        }
+        return distributions;
+    }
+
+    private double[] combine(double[][] memberDistributions) throws Exception {
+        if (combination == Combination.STACKING) {
+            if (metaModel == null) {
+                throw new Exception("The stacking model has not been built");
+            }
+            return metaModel.distributionForInstance(metaInstance(memberDistributions, metaHeader));
+        }
+        double[] votes = new double[numClasses];
+        for (int m = 0; m < members.length; m++) {
+            for (int c = 0; c < numClasses; c++) {
+                votes[c] += members[m].weight * memberDistributions[m][c];
+            }
+        }
+        if (Utils.sum(votes) > 0) {
+            Utils.normalize(votes);
+        }
+        return votes;
+    }
+
+    private Instance metaInstance(double[][] memberDistributions, Instances header) {
+        double[] values = new double[members.length * numClasses + 1];
+        for (int m = 0; m < members.length; m++) {
+            System.arraycopy(memberDistributions[m], 0, values, m * numClasses, numClasses);
+        }
+        values[values.length - 1] = Utils.missingValue();
+        Instance instance = new DenseInstance(1.0, values);
+        instance.setDataset(header);
+        return instance;
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(getDisplayName()).append('\n');
+        for (Member member : members) {
+            text.append(String.format("  %s, weight %.4f%n", member.name, member.weight));
+        }
+        return text.toString();
+    }
+
+    /**
+     * One trained approach of the ensemble with the pipeline of its data view
+     */
+    public static class Member implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final AbstractClassifier model;
+        private final PreprocessingPipeline pipeline;
+        private final double weight;
+
+        /**
+         * @param model a Weka classifier, i.e. an AbstractClassifier, so the ensemble can be saved
+         * @param weight the member's share of the vote, e.g. its cross-validated accuracy
+         */
+        public Member(String name, Classifier model, PreprocessingPipeline pipeline, double weight) {
+            this.name = name;
+            this.model = (AbstractClassifier) model;
+            this.pipeline = pipeline;
+            this.weight = weight;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        double[] distribution(Instance raw) throws Exception {
+            // Filters may keep a reference to their input, so each member gets its own row
+            return model.distributionForInstance(pipeline.transform((Instance) raw.copy()));
+        }
+
+        double[][] distributions(Instances rawRows) throws Exception {
+            if (model instanceof BatchPredictor
+                && ((BatchPredictor) model).implementsMoreEfficientBatchPrediction()) {
+                Instances batch = new Instances(pipeline.getOutputHeader(), rawRows.numInstances());
+                for (int i = 0; i < rawRows.numInstances(); i++) {
+                    batch.add(pipeline.transform((Instance) rawRows.instance(i).copy()));
+                }
+                return ((BatchPredictor) model).distributionsForInstances(batch);
+            }
+            double[][] distributions = new double[rawRows.numInstances()][];
+            for (int i = 0; i < distributions.length; i++) {
+                distributions[i] = distribution(rawRows.instance(i));
+            }
+            return distributions;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.wekaproject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Cross-validation results kept on disk between runs, one small file per
+ * evaluation, so an approach whose data and configuration did not change is not
+ * evaluated again. The key describes everything the result depends on (see
+ * ClassificationEngine); files are named by its hash and also store the key to
+ * rule out collisions. Reading a file marks it as recently used, and when the
+ * directory grows past its limit the least recently used files are deleted.
+ */
+public class EvaluationCache {
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private static final String SUFFIX = ".result";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public EvaluationCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Cache in the user's home directory, shared by all datasets
+     */
+    public static Path defaultDirectory() {
+        return Path.of(System.getProperty("user.home"), ".wekaproject", "evaluation-cache");
+    }
+
+    /**
+     * The result stored for key, or null if there is none
+     */
+    public synchronized Result get(String key) throws IOException, ClassNotFoundException {
+        Path file = fileFor(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Result result;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (!key.equals(in.readUTF())) {
+                return null;
+            }
+            result = (Result) in.readObject();
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        return result;
+    }
+
+    /**
+     * Store the result for key, then trim the cache to its size limit
+     */
+    public synchronized void put(String key, Result result) throws IOException {
+        Files.createDirectories(directory);
+        Path file = fileFor(key);
+
+        // Write to a temporary file first so a half-written result is never picked up
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeUTF(key);
+            out.writeObject(result);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evict();
+    }
+
+    /**
+     * Delete least recently used results until the cache fits in its limit
+     */
+    private void evict() throws IOException {
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry : entries) {
+                files.add(entry);
+                total += Files.size(entry);
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        files.sort(Comparator.comparing(EvaluationCache::lastUsed));
+        for (Path file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long size = Files.size(file);
+            Files.deleteIfExists(file);
+            total -= size;
+        }
+    }
+
+    private static FileTime lastUsed(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private Path fileFor(String key) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder name = new StringBuilder();
+        for (byte b : digest.digest(key.getBytes(StandardCharsets.UTF_8))) {
+            name.append(String.format("%02x", b));
+        }
+        return directory.resolve(name + SUFFIX);
+    }
+}
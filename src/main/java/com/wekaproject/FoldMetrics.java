@@ -0,0 +1,49 @@
+package com.wekaproject;
+
+/**
+ * Accuracy and cost of one cross-validation fold, measured on the thread that ran it
+ */
+public class FoldMetrics {
+    private final double accuracy;
+    private final long trainingTimeMillis;
+    private final long evaluationTimeMillis;
+    private final long allocatedBytes;
+    private final long modelSizeBytes;
+
+    /**
+     * @param accuracy percentage of the fold's test rows classified correctly
+     * @param allocatedBytes bytes allocated by the fold's thread, or -1 if the JVM can't tell
+     * @param modelSizeBytes serialized size of the fold's model, or -1 if it wasn't measured
+     */
+    public FoldMetrics(double accuracy, long trainingTimeMillis, long evaluationTimeMillis, long allocatedBytes, long modelSizeBytes) {
+        this.accuracy = accuracy;
+        this.trainingTimeMillis = trainingTimeMillis;
+        this.evaluationTimeMillis = evaluationTimeMillis;
+        this.allocatedBytes = allocatedBytes;
+        this.modelSizeBytes = modelSizeBytes;
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public long getTrainingTimeMillis() {
+        return trainingTimeMillis;
+    }
+
+    public long getEvaluationTimeMillis() {
+        return evaluationTimeMillis;
+    }
+
+    public long getTotalTimeMillis() {
+        return trainingTimeMillis + evaluationTimeMillis;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getModelSizeBytes() {
+        return modelSizeBytes;
+    }
+}
@@ -0,0 +1,139 @@
+package com.wekaproject;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Random;
+
+/**
+ * Row indices of the training and test set of every cross-validation fold.
+ * The indices are computed the way Evaluation.crossValidateModel shuffles,
+ * stratifies and cuts the data, so the folds hold exactly the rows, in exactly
+ * the order, that crossValidateModel would use. The plan depends only on the
+ * number of rows and their class values, which all preprocessed views of a
+ * dataset share, so one plan serves every view.
+ */
+public class FoldPlan {
+    private final int numInstances;
+    private final int[][] trainRows;
+    private final int[][] testRows;
+
+    private FoldPlan(int numInstances, int[][] trainRows, int[][] testRows) {
+        this.numInstances = numInstances;
+        this.trainRows = trainRows;
+        this.testRows = testRows;
+    }
+
+    /**
+     * Plan the folds of data, using random the same way crossValidateModel does
+     */
+    public static FoldPlan create(Instances data, int numFolds, Random random) {
+        int n = data.numInstances();
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+
+        shuffle(order, random);
+        if (data.classAttribute().isNominal()) {
+            order = stratify(order, data, numFolds);
+        }
+
+        int[][] trainRows = new int[numFolds][];
+        int[][] testRows = new int[numFolds][];
+        for (int fold = 0; fold < numFolds; fold++) {
+            // Same fold boundaries as Instances.trainCV and testCV
+            int foldSize = n / numFolds;
+            int offset;
+            if (fold < n % numFolds) {
+                foldSize++;
+                offset = fold;
+            } else {
+                offset = n % numFolds;
+            }
+            int first = fold * (n / numFolds) + offset;
+
+            int[] test = new int[foldSize];
+            System.arraycopy(order, first, test, 0, foldSize);
+
+            int[] train = new int[n - foldSize];
+            System.arraycopy(order, 0, train, 0, first);
+            System.arraycopy(order, first + foldSize, train, first, n - first - foldSize);
+            // trainCV(numFolds, fold, random) shuffles each training set with the shared random
+            shuffle(train, random);
+
+            trainRows[fold] = train;
+            testRows[fold] = test;
+        }
+        return new FoldPlan(n, trainRows, testRows);
+    }
+
+    public int getNumFolds() {
+        return trainRows.length;
+    }
+
+    /**
+     * Whether the plan can be applied to the given data, i.e. it has the planned number of rows
+     */
+    public boolean fits(Instances data) {
+        return data.numInstances() == numInstances;
+    }
+
+    /**
+     * Training set of a fold, sharing the rows of the given view
+     */
+    public FoldView trainFold(Instances view, int fold) {
+        return new FoldView(view, trainRows[fold]);
+    }
+
+    /**
+     * Test set of a fold, sharing the rows of the given view
+     */
+    public FoldView testFold(Instances view, int fold) {
+        return new FoldView(view, testRows[fold]);
+    }
+
+    /**
+     * Instances.randomize on an index array
+     */
+    private static void shuffle(int[] rows, Random random) {
+        for (int j = rows.length - 1; j > 0; j--) {
+            int k = random.nextInt(j + 1);
+            int swap = rows[j];
+            rows[j] = rows[k];
+            rows[k] = swap;
+        }
+    }
+
+    /**
+     * Instances.stratify on an index array: group the rows by class in order of
+     * first appearance, then deal them out in steps of numFolds
+     */
+    private static int[] stratify(int[] rows, Instances data, int numFolds) {
+        int n = rows.length;
+        int index = 1;
+        while (index < n) {
+            Instance first = data.instance(rows[index - 1]);
+            for (int j = index; j < n; j++) {
+                Instance other = data.instance(rows[j]);
+                if (first.classValue() == other.classValue()
+                    || (first.classIsMissing() && other.classIsMissing())) {
+                    int swap = rows[index];
+                    rows[index] = rows[j];
+                    rows[j] = swap;
+                    index++;
+                }
+            }
+            index++;
+        }
+
+        int[] stratified = new int[n];
+        int count = 0;
+        for (int start = 0; count < n; start++) {
+            for (int j = start; j < n; j += numFolds) {
+                stratified[count++] = rows[j];
+            }
+        }
+        return stratified;
+    }
+}
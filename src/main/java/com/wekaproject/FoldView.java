@@ -0,0 +1,33 @@
+package com.wekaproject;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * One fold's training or test set as row numbers into a shared view.
+ * Nothing is copied, and like the view itself the fold can't be changed;
+ * classifiers that need to change their training data copy it first.
+ */
+public class FoldView extends VirtualInstances {
+    private static final long serialVersionUID = 1L;
+
+    private final Instances view;
+    private final int[] rows;
+
+    public FoldView(Instances view, int[] rows) {
+        // The rows keep pointing at the view, which has the same header
+        super(view);
+        this.view = view;
+        this.rows = rows;
+    }
+
+    @Override
+    protected int rowCount() {
+        return rows.length;
+    }
+
+    @Override
+    protected Instance row(int index) {
+        return view.instance(rows[index]);
+    }
+}
@@ -0,0 +1,146 @@
+package com.wekaproject;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.UpdateableClassifier;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.classifiers.functions.SGD;
+import weka.classifiers.lazy.IBk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trains and evaluates updateable classifiers straight from an ArffStream, one row
+ * at a time, for datasets that do not fit in memory; BatchCompare --streaming runs
+ * it instead of the in-memory comparison.
+ *
+ * Learners with a fixed-size model are cross-validated, one model per fold. Lazy
+ * learners such as IBk keep their training rows, so k fold models would hold the
+ * data k-1 times over; they are evaluated prequentially instead, with one model
+ * that only remembers the most recent rows.
+ */
+public class IncrementalEvaluator {
+    /** Rows a lazy learner keeps; older rows drop out as new ones arrive */
+    public static final int LAZY_WINDOW_SIZE = 10000;
+
+    private final ArffStream stream;
+
+    public IncrementalEvaluator(ArffStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * Train a copy of the prototype on every row of the stream
+     */
+    public Classifier train(Classifier prototype) throws Exception {
+        Classifier model = newModel(prototype);
+        UpdateableClassifier updateable = (UpdateableClassifier) model;
+        stream.forEach((instance, rowIndex) -> updateable.updateClassifier(instance));
+        return model;
+    }
+
+    /**
+     * Cross-validation in two passes: row i belongs to fold i % numFolds. The first
+     * pass trains one model per fold on the rows of the other folds, the second
+     * tests each row on the model of its own fold.
+     */
+    public Evaluation crossValidate(Classifier prototype, int numFolds) throws Exception {
+        Classifier[] models = new Classifier[numFolds];
+        for (int f = 0; f < numFolds; f++) {
+            models[f] = newModel(prototype);
+        }
+
+        stream.forEach((instance, rowIndex) -> {
+            int fold = rowIndex % numFolds;
+            for (int f = 0; f < numFolds; f++) {
+                if (f != fold) {
+                    ((UpdateableClassifier) models[f]).updateClassifier(instance);
+                }
+            }
+        });
+
+        Evaluation eval = new Evaluation(stream.getStructure());
+        stream.forEach((instance, rowIndex) ->
+            eval.evaluateModelOnceAndRecordPrediction(models[rowIndex % numFolds], instance));
+        return eval;
+    }
+
+    /**
+     * Single-pass test-then-train evaluation: each row is first classified by the
+     * model trained on the rows before it, then used to update that model
+     */
+    public Evaluation prequential(Classifier prototype) throws Exception {
+        Classifier model = newModel(prototype);
+        UpdateableClassifier updateable = (UpdateableClassifier) model;
+
+        Evaluation eval = new Evaluation(stream.getStructure());
+        stream.forEach((instance, rowIndex) -> {
+            if (rowIndex > 0) {
+                eval.evaluateModelOnceAndRecordPrediction(model, instance);
+            }
+            updateable.updateClassifier(instance);
+        });
+        return eval;
+    }
+
+    /**
+     * Evaluate the updateable learners that can handle this dataset: cross-validate
+     * those with a fixed-size model, and test-then-train the lazy ones
+     */
+    public List<Result> runIncrementalClassifications(int numFolds) throws Exception {
+        List<Classifier> prototypes = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Boolean> lazy = new ArrayList<>();
+
+        prototypes.add(new NaiveBayesUpdateable());
+        names.add("Naive Bayes (incremental)");
+        lazy.add(false);
+
+        IBk ibk = new IBk();
+        ibk.setKNN(3);
+        ibk.setWindowSize(LAZY_WINDOW_SIZE);
+        prototypes.add(ibk);
+        names.add("IBk (K=3, prequential, last " + LAZY_WINDOW_SIZE + " rows)");
+        lazy.add(true);
+
+        prototypes.add(new SGD());
+        names.add("SGD (incremental)");
+        lazy.add(false);
+
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < prototypes.size(); i++) {
+            Classifier prototype = prototypes.get(i);
+            String name = names.get(i);
+
+            // SGD for example only handles binary classes
+            if (!prototype.getCapabilities().test(stream.getStructure())) {
+                System.out.println("Skipping " + name + ": dataset not supported");
+                continue;
+            }
+
+            try {
+                Evaluation eval = lazy.get(i) ? prequential(prototype) : crossValidate(prototype, numFolds);
+                Result result = new Result(name, eval.pctCorrect(), (int) eval.correct(), (int) eval.numInstances());
+                results.add(result);
+                System.out.println(result);
+            } catch (Exception e) {
+                System.err.println("Error running " + name + ": " + e.getMessage());
+                Result failed = new Result(name, 0.0, 0, stream.getNumInstances());
+                failed.setStatus(Result.Status.FAILED);
+                results.add(failed);
+            }
+        }
+        return results;
+    }
+
+    private Classifier newModel(Classifier prototype) throws Exception {
+        if (!(prototype instanceof UpdateableClassifier)) {
+            throw new IllegalArgumentException(prototype.getClass().getSimpleName() + " cannot be trained incrementally");
+        }
+        Classifier model = AbstractClassifier.makeCopy(prototype);
+        model.buildClassifier(stream.getStructure());
+        return model;
+    }
+}
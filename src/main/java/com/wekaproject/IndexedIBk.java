@@ -0,0 +1,202 @@
+package com.wekaproject;
+
+import weka.core.DistanceFunction;
+import weka.core.EuclideanDistance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.NormalizableDistance;
+
+import java.util.stream.IntStream;
+
+/**
+ * IBk whose neighbour queries go through a NeighbourIndex (KD-tree or ball tree,
+ * by number of dimensions) over a flat copy of the training rows, instead of a
+ * linear scan. The index covers the plain setup the approaches use: numeric
+ * attributes without missing values and an unmodified EuclideanDistance. Anything
+ * else, and any query row with a missing value, goes through the configured
+ * search as usual. The neighbours, and so the predictions, are the same as IBk's.
+ * Batches of rows are searched on several threads.
+ */
+public class IndexedIBk extends MultiKIBk {
+    private static final long serialVersionUID = 1L;
+
+    /** Rows per parallel task in a batch query */
+    private static final int BATCH_CHUNK_SIZE = 256;
+
+    private NeighbourIndex index;
+
+    public IndexedIBk(int k) {
+        super(k);
+    }
+
+    @Override
+    public void buildClassifier(Instances data) throws Exception {
+        super.buildClassifier(data);
+        index = canIndex() ? NeighbourIndex.build(m_Train) : null;
+    }
+
+    /**
+     * Whether the last build produced an index, i.e. queries skip the linear search
+     */
+    public boolean isIndexed() {
+        return index != null;
+    }
+
+    private boolean canIndex() {
+        if (getWindowSize() > 0 || getCrossValidate()) {
+            return false;
+        }
+        DistanceFunction distance = m_NNSearch.getDistanceFunction();
+        if (distance.getClass() != EuclideanDistance.class) {
+            return false;
+        }
+        EuclideanDistance euclidean = (EuclideanDistance) distance;
+        return !euclidean.getDontNormalize() && !euclidean.getInvertSelection()
+            && "first-last".equals(euclidean.getAttributeIndices());
+    }
+
+    @Override
+    public double[] distributionForInstance(Instance instance) throws Exception {
+        if (index == null) {
+            return super.distributionForInstance(instance);
+        }
+        return distributionsForKs(instance, new int[]{getKNN()})[0];
+    }
+
+    @Override
+    public boolean implementsMoreEfficientBatchPrediction() {
+        return index != null;
+    }
+
+    @Override
+    public double[][] distributionsForInstances(Instances batch) throws Exception {
+        if (index == null) {
+            return super.distributionsForInstances(batch);
+        }
+        double[][][] byK = distributionsForKs(batch, new int[]{getKNN()});
+        double[][] distributions = new double[byK.length][];
+        for (int i = 0; i < byK.length; i++) {
+            distributions[i] = byK[i][0];
+        }
+        return distributions;
+    }
+
+    @Override
+    protected Neighbourhood findNeighbours(Instance instance, int k) throws Exception {
+        double[] query = index == null ? null : index.toQuery(instance);
+        if (query == null) {
+            return super.findNeighbours(instance, k);
+        }
+        m_NNSearch.addInstanceInfo(instance);
+        Ranges ranges = currentRanges();
+        return neighbourhood(index.search(query, ranges.min, ranges.width, k));
+    }
+
+    /**
+     * Rows are classified as if one at a time, each widening the attribute ranges
+     * for the next. The ranges at the start of every chunk are recorded while the
+     * live ranges are advanced over the whole batch; each chunk then replays the
+     * widening for its own rows, so the chunks can be searched in parallel.
+     */
+    @Override
+    public double[][][] distributionsForKs(Instances batch, int[] ks) throws Exception {
+        int numRows = batch.numInstances();
+        if (index == null || m_Train.numInstances() == 0) {
+            return super.distributionsForKs(batch, ks);
+        }
+        double[][] queries = new double[numRows][];
+        for (int i = 0; i < numRows; i++) {
+            queries[i] = index.toQuery(batch.instance(i));
+            if (queries[i] == null) {
+                // Missing values need the regular search, with the ranges as they are at that row
+                return super.distributionsForKs(batch, ks);
+            }
+        }
+
+        int numChunks = (numRows + BATCH_CHUNK_SIZE - 1) / BATCH_CHUNK_SIZE;
+        Ranges[] chunkRanges = new Ranges[numChunks];
+        for (int c = 0; c < numChunks; c++) {
+            chunkRanges[c] = currentRanges();
+            for (int i = c * BATCH_CHUNK_SIZE; i < Math.min(numRows, (c + 1) * BATCH_CHUNK_SIZE); i++) {
+                m_NNSearch.addInstanceInfo(batch.instance(i));
+            }
+        }
+
+        int maxK = getKNN();
+        Thread caller = Thread.currentThread();
+        double[][][] distributions = new double[numRows][][];
+        try {
+            IntStream.range(0, numChunks).parallel().forEach(c -> {
+                if (caller.isInterrupted()) {
+                    throw new IllegalStateException(new InterruptedException("Neighbour search interrupted"));
+                }
+                Ranges ranges = chunkRanges[c];
+                try {
+                    for (int i = c * BATCH_CHUNK_SIZE; i < Math.min(numRows, (c + 1) * BATCH_CHUNK_SIZE); i++) {
+                        ranges.update(queries[i]);
+                        distributions[i] = distributionsForKs(
+                            neighbourhood(index.search(queries[i], ranges.min, ranges.width, maxK)), ks);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        return distributions;
+    }
+
+    private Neighbourhood neighbourhood(NeighbourIndex.Neighbours found) {
+        Instances neighbours = new Instances(m_Train, found.rows.length);
+        double[] distances = new double[found.rows.length];
+        for (int i = 0; i < found.rows.length; i++) {
+            neighbours.add(m_Train.instance(found.rows[i]));
+            // EuclideanDistance.postProcessDistances takes the root, as the linear search reports it
+            distances[i] = Math.sqrt(found.squaredDistances[i]);
+        }
+        return new Neighbourhood(neighbours, distances);
+    }
+
+    /**
+     * Copy of the search's current attribute ranges for the indexed dimensions
+     */
+    private Ranges currentRanges() throws Exception {
+        double[][] all = ((NormalizableDistance) m_NNSearch.getDistanceFunction()).getRanges();
+        int[] attributes = index.getAttributes();
+        Ranges ranges = new Ranges(attributes.length);
+        for (int d = 0; d < attributes.length; d++) {
+            ranges.min[d] = all[attributes[d]][NormalizableDistance.R_MIN];
+            ranges.max[d] = all[attributes[d]][NormalizableDistance.R_MAX];
+            ranges.width[d] = all[attributes[d]][NormalizableDistance.R_WIDTH];
+        }
+        return ranges;
+    }
+
+    /**
+     * Attribute ranges of the indexed dimensions, widened the way NormalizableDistance.updateRanges does
+     */
+    private static class Ranges {
+        final double[] min;
+        final double[] max;
+        final double[] width;
+
+        Ranges(int numDims) {
+            min = new double[numDims];
+            max = new double[numDims];
+            width = new double[numDims];
+        }
+
+        void update(double[] values) {
+            for (int d = 0; d < values.length; d++) {
+                if (values[d] < min[d]) {
+                    min[d] = values[d];
+                    width[d] = max[d] - min[d];
+                } else if (values[d] > max[d]) {
+                    max[d] = values[d];
+                    width[d] = max[d] - min[d];
+                }
+            }
+        }
+    }
+}
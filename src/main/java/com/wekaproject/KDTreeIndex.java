@@ -0,0 +1,126 @@
+package com.wekaproject;
+
+import java.util.Arrays;
+
+/**
+ * KD-tree over the flat rows of a NeighbourIndex. Nodes split at the median of
+ * their widest dimension and keep the bounding box of their rows; a subtree is
+ * skipped when the normalized distance to its box already exceeds the k-th
+ * neighbour found so far.
+ */
+public class KDTreeIndex extends NeighbourIndex {
+    private static final long serialVersionUID = 1L;
+
+    private int numNodes;
+    private int[] from;
+    private int[] to;
+    private int[] left;
+    private int[] right;
+    /** Bounding box of node n, dimension d, at boxLow/boxHigh[n * numDims + d] */
+    private double[] boxLow;
+    private double[] boxHigh;
+
+    KDTreeIndex(double[] rows, int numRows, int[] attributes) {
+        super(rows, numRows, attributes);
+        int capacity = 4 * (numRows / LEAF_SIZE) + 4;
+        from = new int[capacity];
+        to = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        boxLow = new double[capacity * numDims];
+        boxHigh = new double[capacity * numDims];
+        build(0, numRows, new double[numRows]);
+        trim();
+    }
+
+    private int build(int start, int end, double[] keys) {
+        int node = numNodes++;
+        from[node] = start;
+        to[node] = end;
+        left[node] = -1;
+        right[node] = -1;
+        for (int d = 0; d < numDims; d++) {
+            double lo = Double.POSITIVE_INFINITY;
+            double hi = Double.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                double v = value(order[i], d);
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+            boxLow[node * numDims + d] = lo;
+            boxHigh[node * numDims + d] = hi;
+        }
+
+        if (end - start > LEAF_SIZE) {
+            int dim = widestDimension(start, end);
+            if (boxHigh[node * numDims + dim] > boxLow[node * numDims + dim]) {
+                for (int i = start; i < end; i++) {
+                    keys[order[i]] = value(order[i], dim);
+                }
+                int middle = (start + end) >>> 1;
+                select(start, end, middle, keys);
+                left[node] = build(start, middle, keys);
+                right[node] = build(middle, end, keys);
+            }
+        }
+        return node;
+    }
+
+    private void trim() {
+        from = Arrays.copyOf(from, numNodes);
+        to = Arrays.copyOf(to, numNodes);
+        left = Arrays.copyOf(left, numNodes);
+        right = Arrays.copyOf(right, numNodes);
+        boxLow = Arrays.copyOf(boxLow, numNodes * numDims);
+        boxHigh = Arrays.copyOf(boxHigh, numNodes * numDims);
+    }
+
+    @Override
+    protected void search(double[] query, double[] min, double[] width, Collector collector) {
+        search(0, query, width, min, collector);
+    }
+
+    private void search(int node, double[] query, double[] width, double[] min, Collector collector) {
+        if (left[node] < 0) {
+            scan(from[node], to[node], query, min, width, collector);
+            return;
+        }
+        double leftBound = boxBound(left[node], query, width);
+        double rightBound = boxBound(right[node], query, width);
+        int near = leftBound <= rightBound ? left[node] : right[node];
+        int far = near == left[node] ? right[node] : left[node];
+        double farBound = Math.max(leftBound, rightBound);
+
+        if (!collector.canSkip(Math.min(leftBound, rightBound))) {
+            search(near, query, width, min, collector);
+        }
+        if (!collector.canSkip(farBound)) {
+            search(far, query, width, min, collector);
+        }
+    }
+
+    /**
+     * Squared normalized distance from the query to the node's box, a lower bound
+     * for every row in it
+     */
+    private double boxBound(int node, double[] query, double[] width) {
+        int offset = node * numDims;
+        double sum = 0;
+        for (int d = 0; d < numDims; d++) {
+            if (!(width[d] > 0)) {
+                continue;
+            }
+            double gap;
+            if (query[d] < boxLow[offset + d]) {
+                gap = boxLow[offset + d] - query[d];
+            } else if (query[d] > boxHigh[offset + d]) {
+                gap = query[d] - boxHigh[offset + d];
+            } else {
+                continue;
+            }
+            double scaled = gap / width[d];
+            sum += scaled * scaled;
+        }
+        return sum;
+    }
+}
@@ -4,6 +4,8 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Main extends JFrame {
@@ -11,13 +13,22 @@ public class Main extends JFrame {
     private JLabel datasetInfoLabel;
     private JButton browseButton;
     private JButton startButton;
+    private JButton cancelButton;
+    private JSpinner timeBudgetSpinner;
+    private JSpinner approachBudgetSpinner;
+    private JCheckBox racingCheckBox;
+    private JCheckBox searchCheckBox;
+    private JButton exportButton;
     private JProgressBar progressBar;
     private JTable resultsTable;
     private DefaultTableModel tableModel;
     private JLabel bestAlgorithmLabel;
     private File selectedDataset;
+    private transient DatasetInspector datasetInspector;
     private JTabbedPane tabbedPane;
-    private ClassificationEngine classificationEngine;
+    private transient volatile ClassificationEngine classificationEngine;
+    private volatile boolean cancelRequested;
+    private transient List<Result> lastResults;
 
     public Main() {
         setTitle("WEKA Classifier Comparison");
@@ -42,13 +53,31 @@ public class Main extends JFrame {
         startButton = new JButton("Start Classification");
         startButton.setEnabled(false);
         startButton.addActionListener(e -> startClassification());
+
+        // Cancel button
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(e -> cancelClassification());
+
+        // Time limits in seconds, 0 means no limit
+        timeBudgetSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 86400, 10));
+        approachBudgetSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 86400, 10));
+
+        // Racing drops clear losers on samples before the full evaluation
+        racingCheckBox = new JCheckBox("Racing");
+        racingCheckBox.setToolTipText("Evaluate on growing samples first and skip algorithms that are clearly worse");
+
+        // Parameter search tunes each algorithm before the comparison
+        searchCheckBox = new JCheckBox("Tune parameters");
+        searchCheckBox.setToolTipText("Try several settings of each algorithm in parallel and compare the best of each");
         
         // Progress bar
         progressBar = new JProgressBar(0, 100);
         progressBar.setStringPainted(true);
         
         // Results table
-        String[] columns = {"Algorithm", "Accuracy (%)", "Correctly Classified"};
+        String[] columns = {"Algorithm", "Status", "Accuracy (%)", "Correctly Classified",
+            "Train (ms)", "Eval (ms)", "Allocated (MB)", "Model (KB)"};
         tableModel = new DefaultTableModel(columns, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
@@ -62,6 +91,11 @@ public class Main extends JFrame {
         bestAlgorithmLabel = new JLabel("Best Algorithm: -");
         bestAlgorithmLabel.setFont(new Font("Arial", Font.BOLD, 14));
         bestAlgorithmLabel.setForeground(new Color(0, 128, 0));
+
+        // Export button
+        exportButton = new JButton("Export Results...");
+        exportButton.setEnabled(false);
+        exportButton.addActionListener(e -> exportResults());
     }
 
     private void layoutComponents() {
@@ -85,7 +119,16 @@ public class Main extends JFrame {
         // Middle panel - Control
         JPanel middlePanel = new JPanel(new BorderLayout(5, 5));
         middlePanel.setBorder(BorderFactory.createTitledBorder("Classification Control"));
-        middlePanel.add(startButton, BorderLayout.NORTH);
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        controlPanel.add(startButton);
+        controlPanel.add(cancelButton);
+        controlPanel.add(new JLabel("  Time limit (s): total"));
+        controlPanel.add(timeBudgetSpinner);
+        controlPanel.add(new JLabel("per algorithm"));
+        controlPanel.add(approachBudgetSpinner);
+        controlPanel.add(racingCheckBox);
+        controlPanel.add(searchCheckBox);
+        middlePanel.add(controlPanel, BorderLayout.NORTH);
         middlePanel.add(progressBar, BorderLayout.CENTER);
         middlePanel.setPreferredSize(new Dimension(0, 100));
 
@@ -95,7 +138,10 @@ public class Main extends JFrame {
         
         JScrollPane scrollPane = new JScrollPane(resultsTable);
         bottomPanel.add(scrollPane, BorderLayout.CENTER);
-        bottomPanel.add(bestAlgorithmLabel, BorderLayout.SOUTH);
+        JPanel resultsFooter = new JPanel(new BorderLayout(5, 5));
+        resultsFooter.add(bestAlgorithmLabel, BorderLayout.CENTER);
+        resultsFooter.add(exportButton, BorderLayout.EAST);
+        bottomPanel.add(resultsFooter, BorderLayout.SOUTH);
         
         // Combine top and middle panels
         JPanel topCombinedPanel = new JPanel(new BorderLayout(5, 5));
@@ -133,28 +179,57 @@ public class Main extends JFrame {
             selectedDataset = fileChooser.getSelectedFile();
             datasetPathField.setText(selectedDataset.getAbsolutePath());
             loadDatasetInfo();
-            startButton.setEnabled(true);
         }
     }
 
     private void loadDatasetInfo() {
-        try {
-            DataProcessor processor = new DataProcessor(selectedDataset.getAbsolutePath());
-            int instances = processor.getNumInstances();
-            int attributes = processor.getNumAttributes();
-            datasetInfoLabel.setText(String.format(
-                "Instances: %d  |  Attributes: %d  |  Ready to classify", 
-                instances, attributes
-            ));
-        } catch (Exception e) {
-            datasetInfoLabel.setText("Error loading dataset: " + e.getMessage());
-            startButton.setEnabled(false);
-        }
+        datasetInspector = null;
+        startButton.setEnabled(false);
+        datasetInfoLabel.setText("Reading dataset header...");
+        File dataset = selectedDataset;
+
+        // Inspect off the EDT so large files don't freeze the UI
+        SwingWorker<DatasetInspector, Void> worker = new SwingWorker<>() {
+            @Override
+            protected DatasetInspector doInBackground() throws Exception {
+                return new DatasetInspector(dataset.getAbsolutePath());
+            }
+
+            @Override
+            protected void done() {
+                if (dataset != selectedDataset) {
+                    return; // Another file was picked meanwhile
+                }
+                try {
+                    datasetInspector = get();
+                    datasetInfoLabel.setText(String.format(
+                        "Instances: %d  |  Attributes: %d  |  Ready to classify",
+                        datasetInspector.getNumInstances(), datasetInspector.getNumAttributes()
+                    ));
+                    startButton.setEnabled(true);
+                    loadSavedModel(dataset, datasetInspector);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    datasetInfoLabel.setText("Error loading dataset: " + cause.getMessage());
+                    startButton.setEnabled(false);
+                }
+            }
+        };
+        worker.execute();
     }
 
     private void startClassification() {
         startButton.setEnabled(false);
+        cancelButton.setEnabled(true);
         browseButton.setEnabled(false);
+        exportButton.setEnabled(false);
+        cancelRequested = false;
+        classificationEngine = null;
+        int timeBudget = (Integer) timeBudgetSpinner.getValue();
+        int approachBudget = (Integer) approachBudgetSpinner.getValue();
+        boolean racing = racingCheckBox.isSelected();
+        boolean search = searchCheckBox.isSelected();
+        lastResults = null;
         tableModel.setRowCount(0);
         bestAlgorithmLabel.setText("Best Algorithm: Processing...");
         progressBar.setValue(0);
@@ -163,15 +238,25 @@ public class Main extends JFrame {
         SwingWorker<List<Result>, Integer> worker = new SwingWorker<>() {
             @Override
             protected List<Result> doInBackground() throws Exception {
-                classificationEngine = new ClassificationEngine(
-                    selectedDataset.getAbsolutePath()
-                );
+                // Reuse the inspected header so the file is only parsed once
+                ClassificationEngine engine = new ClassificationEngine(datasetInspector);
+                engine.setParallel(true);
+                engine.setParallelFolds(true);
+                engine.setTimeBudget(timeBudget > 0 ? Duration.ofSeconds(timeBudget) : null);
+                engine.setApproachTimeBudget(approachBudget > 0 ? Duration.ofSeconds(approachBudget) : null);
+                engine.setRacing(racing);
+                engine.setParameterSearch(search);
                 
-                classificationEngine.setProgressListener(progress -> {
+                engine.setProgressListener(progress -> {
                     publish(progress);
                 });
+
+                classificationEngine = engine;
+                if (cancelRequested) {
+                    return new ArrayList<>(); // Cancel was pressed while the data was loading
+                }
                 
-                return classificationEngine.runAllClassifications();
+                return engine.runAllClassifications();
             }
             
             @Override
@@ -189,20 +274,7 @@ public class Main extends JFrame {
 
                     // Add Discover panel after successful classification
                     if (classificationEngine != null && classificationEngine.isTrained()) {
-                        // Remove existing Discover tab if present
-                        for (int i = 0; i < tabbedPane.getTabCount(); i++) {
-                            if (tabbedPane.getTitleAt(i).equals("Discover")) {
-                                tabbedPane.removeTabAt(i);
-                                break;
-                            }
-                        }
-
-                        // Add new Discover panel
-                        DiscoverPanel discoverPanel = new DiscoverPanel(classificationEngine);
-                        tabbedPane.addTab("Discover", discoverPanel);
-
-                        // Switch to Discover tab
-                        tabbedPane.setSelectedIndex(1);
+                        showDiscoverPanel(classificationEngine);
                     }
                 } catch (Exception e) {
                     JOptionPane.showMessageDialog(
@@ -214,6 +286,7 @@ public class Main extends JFrame {
                     e.printStackTrace();
                 } finally {
                     startButton.setEnabled(true);
+                    cancelButton.setEnabled(false);
                     browseButton.setEnabled(true);
                     progressBar.setValue(100);
                 }
@@ -223,28 +296,167 @@ public class Main extends JFrame {
         worker.execute();
     }
 
+    private void showDiscoverPanel(ClassificationEngine engine) throws Exception {
+        // Remove existing Discover tab if present
+        for (int i = 0; i < tabbedPane.getTabCount(); i++) {
+            if (tabbedPane.getTitleAt(i).equals("Discover")) {
+                tabbedPane.removeTabAt(i);
+                break;
+            }
+        }
+
+        // Add new Discover panel
+        DiscoverPanel discoverPanel = new DiscoverPanel(engine);
+        tabbedPane.addTab("Discover", discoverPanel);
+
+        // Switch to Discover tab
+        tabbedPane.setSelectedIndex(1);
+    }
+
+    /**
+     * Bring back the model saved by an earlier run on this dataset, so its results,
+     * the Discover tab and predictions are available without classifying again.
+     * Only the model file is read; the dataset itself is loaded when the Discover
+     * tab asks for example rows or a new classification starts.
+     */
+    private void loadSavedModel(File dataset, DatasetInspector inspector) {
+        SwingWorker<ClassificationEngine, Void> worker = new SwingWorker<>() {
+            @Override
+            protected ClassificationEngine doInBackground() throws Exception {
+                if (!ModelStore.hasModel(dataset.getAbsolutePath())) {
+                    return null;
+                }
+                return ClassificationEngine.fromSavedModel(inspector);
+            }
+
+            @Override
+            protected void done() {
+                // Skip if another file was picked or a classification was started meanwhile
+                if (dataset != selectedDataset || !startButton.isEnabled()) {
+                    return;
+                }
+                try {
+                    ClassificationEngine engine = get();
+                    if (engine == null) {
+                        return;
+                    }
+                    classificationEngine = engine;
+                    tableModel.setRowCount(0);
+                    displayResults(engine.getResults());
+                    datasetInfoLabel.setText(datasetInfoLabel.getText() + "  |  Saved model loaded");
+                    showDiscoverPanel(engine);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.err.println("Could not load saved model: " + cause.getMessage());
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private void cancelClassification() {
+        cancelButton.setEnabled(false);
+        bestAlgorithmLabel.setText("Best Algorithm: Cancelling...");
+        cancelRequested = true;
+        ClassificationEngine engine = classificationEngine;
+        if (engine != null) {
+            engine.cancel();
+        }
+    }
+
     private void displayResults(List<Result> results) {
-        // Sort by accuracy descending
-        results.sort((r1, r2) -> Double.compare(r2.getAccuracy(), r1.getAccuracy()));
+        // Fully evaluated results first, each group by accuracy descending
+        results.sort((r1, r2) -> {
+            boolean ok1 = r1.getStatus() == Result.Status.OK;
+            boolean ok2 = r2.getStatus() == Result.Status.OK;
+            if (ok1 != ok2) {
+                return ok1 ? -1 : 1;
+            }
+            return Double.compare(r2.getAccuracy(), r1.getAccuracy());
+        });
         
         // Add to table
         for (Result result : results) {
             tableModel.addRow(new Object[]{
                 result.getAlgorithmName(),
+                statusText(result.getStatus()) + (result.isCached() ? " (cached)" : ""),
                 String.format("%.2f", result.getAccuracy()),
-                result.getCorrectlyClassified() + " / " + result.getTotalInstances()
+                result.getCorrectlyClassified() + " / " + result.getTotalInstances(),
+                result.getTrainingTimeMillis(),
+                result.getEvaluationTimeMillis(),
+                result.getAllocatedBytes() < 0 ? "-" : String.format("%.1f", result.getAllocatedBytes() / (1024.0 * 1024.0)),
+                result.getModelSizeBytes() < 0 ? "-" : String.format("%.1f", result.getModelSizeBytes() / 1024.0)
             });
         }
+        lastResults = results;
+        exportButton.setEnabled(!results.isEmpty());
         
         // Highlight best
-        if (!results.isEmpty()) {
+        if (!results.isEmpty() && results.get(0).getStatus() == Result.Status.OK) {
             Result best = results.get(0);
-            bestAlgorithmLabel.setText(String.format(
+            String bestText = String.format(
                 "Best Algorithm: %s (%.2f%% accuracy)",
                 best.getAlgorithmName(),
                 best.getAccuracy()
-            ));
+            );
+            RaceReport race = classificationEngine != null ? classificationEngine.getLastRaceReport() : null;
+            if (race != null) {
+                bestText += "  -  racing " + race.describeSaving();
+            }
+            bestAlgorithmLabel.setText(bestText);
             resultsTable.setRowSelectionInterval(0, 0);
+        } else {
+            bestAlgorithmLabel.setText("Best Algorithm: -");
+        }
+    }
+
+    private static String statusText(Result.Status status) {
+        switch (status) {
+            case TIMED_OUT:
+                return "Timed out";
+            case CANCELLED:
+                return "Cancelled";
+            case FAILED:
+                return "Failed";
+            case ELIMINATED:
+                return "Eliminated";
+            default:
+                return "OK";
+        }
+    }
+
+    private void exportResults() {
+        if (lastResults == null) {
+            return;
+        }
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File("results.csv"));
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                String name = f.getName().toLowerCase();
+                return f.isDirectory() || name.endsWith(".csv") || name.endsWith(".json");
+            }
+
+            @Override
+            public String getDescription() {
+                return "CSV or JSON Files (*.csv, *.json)";
+            }
+        });
+
+        if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
+            try {
+                ResultExporter.export(lastResults, file.toPath());
+            } catch (Exception e) {
+                JOptionPane.showMessageDialog(
+                    this,
+                    "Could not export results: " + e.getMessage(),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE
+                );
+            }
         }
     }
 
@@ -0,0 +1,141 @@
+package com.wekaproject;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The trained best model of a dataset, stored next to the source file together
+ * with its preprocessing pipeline (fitted filters and headers) and the results of
+ * the run that chose it, so a later session can predict without retraining.
+ * The file starts with the source fingerprint; a model whose dataset has changed
+ * since is ignored without reading the rest.
+ */
+public class ModelStore {
+    private static final int VERSION = 1;
+
+    public static Path modelPathFor(String datasetPath) {
+        return Path.of(datasetPath + ".model");
+    }
+
+    /**
+     * Whether a stored model exists for the dataset and still matches its contents
+     */
+    public static boolean hasModel(String datasetPath) {
+        try (ObjectInputStream in = open(datasetPath)) {
+            return in != null && readHeader(in, datasetPath);
+        } catch (IOException | ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Read the stored model of a dataset, or return null if there is none or its
+     * dataset has changed since it was saved
+     */
+    public static SavedModel load(String datasetPath) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = open(datasetPath)) {
+            if (in == null || !readHeader(in, datasetPath)) {
+                return null;
+            }
+            return (SavedModel) in.readObject();
+        }
+    }
+
+    /**
+     * Store the model trained on the given dataset, replacing any earlier one
+     *
+     * @param fingerprint fingerprint of the dataset file the model was trained on
+     */
+    public static void save(String datasetPath, DatasetFingerprint fingerprint, SavedModel model) throws IOException {
+        // Write to a temporary file first so a half-written model is never picked up
+        Path file = modelPathFor(datasetPath);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(VERSION);
+            out.writeObject(fingerprint);
+            out.writeObject(model);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ObjectInputStream open(String datasetPath) throws IOException {
+        Path file = modelPathFor(datasetPath);
+        if (!Files.isRegularFile(file) || !Files.isRegularFile(Path.of(datasetPath))) {
+            return null;
+        }
+        return new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+    }
+
+    private static boolean readHeader(ObjectInputStream in, String datasetPath) throws IOException, ClassNotFoundException {
+        if (in.readInt() != VERSION) {
+            return false;
+        }
+        DatasetFingerprint fingerprint = (DatasetFingerprint) in.readObject();
+        return fingerprint.matches(Path.of(datasetPath));
+    }
+
+    /**
+     * Everything needed to predict with a trained model and to show how it was chosen
+     */
+    public static class SavedModel implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String algorithmName;
+        private final AbstractClassifier classifier;
+        // Absent in models saved before compiled trees, which then deserialize with null here
+        private final CompiledTreeModel compiledModel;
+        private final PreprocessingPipeline pipeline;
+        private final ArrayList<Result> results;
+
+        /**
+         * @param classifier a Weka classifier, i.e. an AbstractClassifier, so it can be serialized
+         * @param compiledModel compiled form of the classifier, or null if it has none
+         */
+        public SavedModel(String algorithmName, Classifier classifier, CompiledTreeModel compiledModel,
+                          PreprocessingPipeline pipeline, List<Result> results) {
+            this.algorithmName = algorithmName;
+            this.classifier = (AbstractClassifier) classifier;
+            this.compiledModel = compiledModel;
+            this.pipeline = pipeline;
+            this.results = new ArrayList<>(results);
+        }
+
+        public String getAlgorithmName() {
+            return algorithmName;
+        }
+
+        public Classifier getClassifier() {
+            return classifier;
+        }
+
+        /**
+         * Compiled form of the classifier that was checked against it, or null
+         */
+        public CompiledTreeModel getCompiledModel() {
+            return compiledModel;
+        }
+
+        public PreprocessingPipeline getPipeline() {
+            return pipeline;
+        }
+
+        public List<Result> getResults() {
+            return results;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.wekaproject;
+
+import weka.classifiers.lazy.IBk;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializedObject;
+import weka.core.Utils;
+import weka.core.neighboursearch.NearestNeighbourSearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * IBk that answers for several values of K from one neighbour query. The largest
+ * K is queried once; the neighbours for each smaller K are the first K of that
+ * sorted list plus any further ones tied with the K-th distance, which is the
+ * set IBk itself would find. The votes go through IBk's own makeDistribution,
+ * so each distribution equals that of an IBk configured with that K.
+ */
+public class MultiKIBk extends IBk {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param maxK largest K that will be asked for
+     */
+    protected MultiKIBk(int maxK) {
+        super(maxK);
+    }
+
+    /**
+     * MultiKIBk for the settings of template, indexed if template is an IndexedIBk
+     *
+     * @param template IBk whose settings (distance weighting, search method, ...) are copied
+     * @param maxK largest K that will be asked for
+     */
+    public static MultiKIBk forKs(IBk template, int maxK) throws Exception {
+        MultiKIBk model = template instanceof IndexedIBk ? new IndexedIBk(maxK) : new MultiKIBk(maxK);
+        // Copied through the setters: setOptions would look the search class up by name,
+        // which makes Weka scan the class path
+        model.setDistanceWeighting(template.getDistanceWeighting());
+        model.setMeanSquared(template.getMeanSquared());
+        model.setCrossValidate(template.getCrossValidate());
+        model.setWindowSize(template.getWindowSize());
+        model.setNearestNeighbourSearchAlgorithm((NearestNeighbourSearch)
+            new SerializedObject(template.getNearestNeighbourSearchAlgorithm()).getObject());
+        return model;
+    }
+
+    /**
+     * Class distribution for each of the given K values, in the same order
+     */
+    public double[][] distributionsForKs(Instance instance, int[] ks) throws Exception {
+        double[][] distributions = new double[ks.length][];
+        if (m_Train.numInstances() == 0) {
+            double[] fallback = super.distributionForInstance(instance);
+            Arrays.fill(distributions, fallback);
+            return distributions;
+        }
+
+        // One query for the largest K; addInstanceInfo is called once, as a single IBk would
+        return distributionsForKs(findNeighbours(instance, getKNN()), ks);
+    }
+
+    /**
+     * Class distribution for each of the given K values from the neighbours of the largest K
+     */
+    protected double[][] distributionsForKs(Neighbourhood neighbourhood, int[] ks) throws Exception {
+        double[][] distributions = new double[ks.length][];
+        Instances neighbours = neighbourhood.neighbours;
+        double[] distances = neighbourhood.distances;
+        int found = neighbours.numInstances();
+
+        for (int j = 0; j < ks.length; j++) {
+            int count = Math.min(ks[j], found);
+            // Neighbours tied with the K-th one count too
+            while (count > 0 && count < found && distances[count] == distances[count - 1]) {
+                count++;
+            }
+            // makeDistribution rescales the distances in place, so each K gets its own copy
+            distributions[j] = makeDistribution(
+                new Instances(neighbours, 0, count),
+                Arrays.copyOf(distances, count)
+            );
+        }
+        return distributions;
+    }
+
+    /**
+     * Class distributions for each of the given K values for every row of batch,
+     * indexed [row][K]
+     */
+    public double[][][] distributionsForKs(Instances batch, int[] ks) throws Exception {
+        double[][][] distributions = new double[batch.numInstances()][][];
+        for (int i = 0; i < distributions.length; i++) {
+            if ((i & 63) == 0 && Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Neighbour search interrupted");
+            }
+            distributions[i] = distributionsForKs(batch.instance(i), ks);
+        }
+        return distributions;
+    }
+
+    /**
+     * Record instance in the search's attribute ranges and find its k nearest
+     * neighbours, ties included, sorted by distance
+     */
+    protected Neighbourhood findNeighbours(Instance instance, int k) throws Exception {
+        m_NNSearch.addInstanceInfo(instance);
+        Instances neighbours = m_NNSearch.kNearestNeighbours(instance, k);
+        return new Neighbourhood(neighbours, m_NNSearch.getDistances());
+    }
+
+    /**
+     * IBk options without the -K setting, to tell whether two IBk differ only in K
+     */
+    public static String searchSettings(IBk classifier) {
+        List<String> options = new ArrayList<>(Arrays.asList(classifier.getOptions()));
+        int k = options.indexOf("-K");
+        if (k >= 0) {
+            options.remove(k + 1);
+            options.remove(k);
+        }
+        return Utils.joinOptions(options.toArray(new String[0]));
+    }
+
+    /**
+     * Neighbours found for one instance with their distances, nearest first
+     */
+    protected static class Neighbourhood {
+        final Instances neighbours;
+        final double[] distances;
+
+        Neighbourhood(Instances neighbours, double[] distances) {
+            this.neighbours = neighbours;
+            this.distances = distances;
+        }
+    }
+}
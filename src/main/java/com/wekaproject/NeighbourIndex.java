@@ -0,0 +1,322 @@
+package com.wekaproject;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Nearest neighbour index over a flat row-major double[] copy of numeric training
+ * rows, used by IndexedIBk instead of a linear scan over Instance objects.
+ * Distances are the normalized Euclidean distances of Weka's EuclideanDistance,
+ * computed with the same arithmetic. The attribute ranges are passed in with each
+ * query rather than fixed at build time, because IBk widens them with every
+ * instance it classifies; the tree bounds only rely on the raw coordinates, so
+ * they stay valid for any ranges.
+ */
+public abstract class NeighbourIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Above this many dimensions KD-tree pruning stops paying off and a ball tree is used */
+    public static final int KD_TREE_MAX_DIMENSIONS = 12;
+
+    protected static final int LEAF_SIZE = 16;
+
+    // Rounding slack when comparing bounds to distances, so a tie is never pruned
+    private static final double RELATIVE_SLACK = 1e-9;
+    private static final double ABSOLUTE_SLACK = 1e-18;
+
+    protected final int numRows;
+    protected final int numDims;
+    /** Attribute index of each dimension: every attribute but the class, in order */
+    protected final int[] attributes;
+    /** Row i, dimension d is at rows[i * numDims + d] */
+    protected final double[] rows;
+    /** Row order of the tree; each node covers a contiguous range of it */
+    protected final int[] order;
+
+    protected NeighbourIndex(double[] rows, int numRows, int[] attributes) {
+        this.rows = rows;
+        this.numRows = numRows;
+        this.numDims = attributes.length;
+        this.attributes = attributes;
+        this.order = new int[numRows];
+        for (int i = 0; i < numRows; i++) {
+            order[i] = i;
+        }
+    }
+
+    /**
+     * Index the rows of data, or return null if they can't be indexed: empty data,
+     * a non-numeric attribute other than the class, or a missing value
+     */
+    public static NeighbourIndex build(Instances data) {
+        int numRows = data.numInstances();
+        if (numRows == 0) {
+            return null;
+        }
+        int classIndex = data.classIndex();
+        int[] attributes = new int[classIndex < 0 ? data.numAttributes() : data.numAttributes() - 1];
+        for (int i = 0, d = 0; i < data.numAttributes(); i++) {
+            if (i == classIndex) {
+                continue;
+            }
+            if (!data.attribute(i).isNumeric()) {
+                return null;
+            }
+            attributes[d++] = i;
+        }
+
+        double[] rows = new double[numRows * attributes.length];
+        for (int r = 0; r < numRows; r++) {
+            Instance instance = data.instance(r);
+            int offset = r * attributes.length;
+            for (int d = 0; d < attributes.length; d++) {
+                double value = instance.value(attributes[d]);
+                if (Double.isNaN(value)) {
+                    return null;
+                }
+                rows[offset + d] = value;
+            }
+        }
+        return attributes.length <= KD_TREE_MAX_DIMENSIONS
+            ? new KDTreeIndex(rows, numRows, attributes)
+            : new BallTreeIndex(rows, numRows, attributes);
+    }
+
+    /**
+     * Coordinates of instance in index order, or null if one of them is missing
+     */
+    public double[] toQuery(Instance instance) {
+        double[] query = new double[numDims];
+        for (int d = 0; d < numDims; d++) {
+            query[d] = instance.value(attributes[d]);
+            if (Double.isNaN(query[d])) {
+                return null;
+            }
+        }
+        return query;
+    }
+
+    public int[] getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * The k nearest rows plus any further rows tied with the k-th, sorted by distance
+     *
+     * @param min lower end of each dimension's range
+     * @param width width of each dimension's range; dimensions of width 0 are ignored
+     */
+    public Neighbours search(double[] query, double[] min, double[] width, int k) {
+        Collector collector = new Collector(k);
+        search(query, min, width, collector);
+        return collector.result();
+    }
+
+    protected abstract void search(double[] query, double[] min, double[] width, Collector collector);
+
+    /**
+     * Squared distance to a row, summed in attribute order from the normalized values
+     * exactly as EuclideanDistance does, so ties and rounding come out the same
+     */
+    protected final double distance(double[] query, int row, double[] min, double[] width) {
+        int offset = row * numDims;
+        double sum = 0;
+        for (int d = 0; d < numDims; d++) {
+            if (!(width[d] > 0)) {
+                continue;
+            }
+            double diff = (query[d] - min[d]) / width[d] - (rows[offset + d] - min[d]) / width[d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    protected final void scan(int from, int to, double[] query, double[] min, double[] width, Collector collector) {
+        for (int i = from; i < to; i++) {
+            collector.offer(order[i], distance(query, order[i], min, width));
+        }
+    }
+
+    protected final double value(int row, int dim) {
+        return rows[row * numDims + dim];
+    }
+
+    /**
+     * Dimension with the widest spread of raw values over order[from, to)
+     */
+    protected final int widestDimension(int from, int to) {
+        int best = 0;
+        double bestSpread = -1;
+        for (int d = 0; d < numDims; d++) {
+            double lo = Double.POSITIVE_INFINITY;
+            double hi = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                double v = value(order[i], d);
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+            if (hi - lo > bestSpread) {
+                bestSpread = hi - lo;
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Partially sort order[from, to) by keys[row] so the row at nth is in its sorted
+     * place, with no larger key before it and no smaller key after it
+     */
+    protected final void select(int from, int to, int nth, double[] keys) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo < hi) {
+            double pivot = keys[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[order[i]] < pivot) {
+                    i++;
+                }
+                while (keys[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (nth <= j) {
+                hi = j;
+            } else if (nth >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Rows found by a search, nearest first, with their squared distances
+     */
+    public static class Neighbours {
+        public final int[] rows;
+        public final double[] squaredDistances;
+
+        Neighbours(int[] rows, double[] squaredDistances) {
+            this.rows = rows;
+            this.squaredDistances = squaredDistances;
+        }
+    }
+
+    /**
+     * Keeps the k smallest distances seen in a max-heap, plus every row that was
+     * within the k-th distance when offered; the final k-th distance filters those
+     */
+    protected static class Collector {
+        private final int k;
+        private final double[] heap;
+        private int heapSize;
+        private int[] candidates = new int[16];
+        private double[] candidateDistances = new double[16];
+        private int numCandidates;
+
+        Collector(int k) {
+            this.k = Math.max(1, k);
+            this.heap = new double[this.k];
+        }
+
+        void offer(int row, double distance) {
+            if (heapSize < k) {
+                heap[heapSize++] = distance;
+                siftUp(heapSize - 1);
+            } else if (distance < heap[0]) {
+                heap[0] = distance;
+                siftDown(0);
+            } else if (distance > heap[0]) {
+                return;
+            }
+            if (numCandidates == candidates.length) {
+                candidates = Arrays.copyOf(candidates, numCandidates * 2);
+                candidateDistances = Arrays.copyOf(candidateDistances, numCandidates * 2);
+            }
+            candidates[numCandidates] = row;
+            candidateDistances[numCandidates++] = distance;
+        }
+
+        /**
+         * Whether nothing with a squared distance of at least bound can be among the neighbours
+         */
+        boolean canSkip(double bound) {
+            if (heapSize < k) {
+                return false;
+            }
+            double limit = heap[0];
+            return bound > limit + limit * RELATIVE_SLACK + ABSOLUTE_SLACK;
+        }
+
+        Neighbours result() {
+            double limit = heapSize < k ? Double.POSITIVE_INFINITY : heap[0];
+            Integer[] kept = new Integer[numCandidates];
+            int count = 0;
+            for (int i = 0; i < numCandidates; i++) {
+                if (candidateDistances[i] <= limit) {
+                    kept[count++] = i;
+                }
+            }
+            Arrays.sort(kept, 0, count, (a, b) -> {
+                int byDistance = Double.compare(candidateDistances[a], candidateDistances[b]);
+                return byDistance != 0 ? byDistance : Integer.compare(candidates[a], candidates[b]);
+            });
+            int[] found = new int[count];
+            double[] distances = new double[count];
+            for (int i = 0; i < count; i++) {
+                found[i] = candidates[kept[i]];
+                distances[i] = candidateDistances[kept[i]];
+            }
+            return new Neighbours(found, distances);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (heap[parent] >= heap[i]) {
+                    return;
+                }
+                swap(parent, i);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int largest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < heapSize && heap[left] > heap[largest]) {
+                    largest = left;
+                }
+                if (right < heapSize && heap[right] > heap[largest]) {
+                    largest = right;
+                }
+                if (largest == i) {
+                    return;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            double tmp = heap[a];
+            heap[a] = heap[b];
+            heap[b] = tmp;
+        }
+    }
+}
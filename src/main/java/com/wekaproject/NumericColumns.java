@@ -0,0 +1,119 @@
+package com.wekaproject;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Arrays;
+
+/**
+ * Column-major copy of a dataset: one contiguous double[] per attribute, in
+ * Weka's internal encoding (nominal values as indices, NaN for missing), plus a
+ * weight column when the weights are not all 1. Compared with one DenseInstance
+ * and one double[] per row this saves the per-row headers and keeps each
+ * attribute's values together. ColumnarInstances exposes it to Weka code.
+ */
+public class NumericColumns {
+    private final Instances header;
+    private final int numRows;
+    private final double[][] columns;
+    private final double[] weights;
+
+    private NumericColumns(Instances header, int numRows, double[][] columns, double[] weights) {
+        this.header = header;
+        this.numRows = numRows;
+        this.columns = columns;
+        this.weights = weights;
+    }
+
+    /**
+     * Whether every attribute of data can be held as plain doubles (no string or relational attributes)
+     */
+    public static boolean supports(Instances data) {
+        for (int i = 0; i < data.numAttributes(); i++) {
+            int type = data.attribute(i).type();
+            if (type == Attribute.STRING || type == Attribute.RELATIONAL) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy the rows of data into columns
+     */
+    public static NumericColumns of(Instances data) {
+        if (!supports(data)) {
+            throw new IllegalArgumentException("String and relational attributes can't be stored as columns");
+        }
+        int numRows = data.numInstances();
+        int numAttributes = data.numAttributes();
+        double[][] columns = new double[numAttributes][numRows];
+        double[] weights = null;
+        for (int r = 0; r < numRows; r++) {
+            Instance instance = data.instance(r);
+            for (int a = 0; a < numAttributes; a++) {
+                columns[a][r] = instance.value(a);
+            }
+            if (instance.weight() != 1.0) {
+                if (weights == null) {
+                    weights = new double[numRows];
+                    Arrays.fill(weights, 1.0);
+                }
+                weights[r] = instance.weight();
+            }
+        }
+        return new NumericColumns(new Instances(data, 0), numRows, columns, weights);
+    }
+
+    /**
+     * Columns that were already read elsewhere, e.g. from ColumnarCache; they are used as they are, not copied
+     *
+     * @param weights weight of each row, or null if they are all 1
+     */
+    static NumericColumns wrap(Instances header, double[][] columns, double[] weights) {
+        int numRows = columns.length > 0 ? columns[0].length : 0;
+        return new NumericColumns(new Instances(header, 0), numRows, columns, weights);
+    }
+
+    /**
+     * Empty dataset with the attributes and class of the stored data
+     */
+    public Instances getHeader() {
+        return header;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumAttributes() {
+        return columns.length;
+    }
+
+    /**
+     * All values of one attribute, in row order. The array is shared, don't modify it.
+     */
+    public double[] column(int attribute) {
+        return columns[attribute];
+    }
+
+    public double value(int row, int attribute) {
+        return columns[attribute][row];
+    }
+
+    public double weight(int row) {
+        return weights == null ? 1.0 : weights[row];
+    }
+
+    /**
+     * Fresh array with the values of one row, in attribute order
+     */
+    public double[] row(int row) {
+        double[] values = new double[columns.length];
+        for (int a = 0; a < columns.length; a++) {
+            values[a] = columns[a][row];
+        }
+        return values;
+    }
+}
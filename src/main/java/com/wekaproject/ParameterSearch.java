@@ -0,0 +1,289 @@
+package com.wekaproject;
+
+import weka.classifiers.AggregateableEvaluation;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Cross-validates the configurations of a parameter space on shared folds and
+ * picks the best one. The folds of all configurations run in parallel, a few
+ * folds at a time. Once 30% and again 60% of the folds are done, configurations
+ * that are significantly worse than the leader on their paired fold accuracies
+ * (see Racing.significantlyWorse) are dropped, so poor settings don't get the
+ * remaining folds. The survivors finish all folds and are ranked by their
+ * merged cross-validation accuracy.
+ *
+ * A search stops with an InterruptedException when its thread is interrupted or
+ * its deadline passes; no fold of another configuration starts after that.
+ */
+public class ParameterSearch {
+    // Fractions of the folds after which poor configurations are dropped
+    private static final double[] CHECKPOINTS = {0.3, 0.6};
+
+    private final ExecutorService executor;
+    private final double significance;
+    private boolean hasDeadline;
+    private long deadlineNanos;
+
+    /**
+     * @param executor pool the folds run on, or null to run them on the calling thread
+     * @param significance one-sided significance level at which a configuration is dropped
+     */
+    public ParameterSearch(ExecutorService executor, double significance) {
+        this.executor = executor;
+        this.significance = significance;
+    }
+
+    /**
+     * Stop searching once System.nanoTime() reaches the given value
+     */
+    public void setDeadline(long deadlineNanos) {
+        this.hasDeadline = true;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Evaluate the configurations of a space on the given data and folds
+     *
+     * @param configurations option strings, e.g. from ParameterSpace.configurations
+     * @return one trial per configuration, the best first, then the dropped and failed ones
+     */
+    public List<Trial> search(ParameterSpace space, List<String> configurations, Instances data, FoldPlan folds)
+        throws Exception {
+        int numFolds = folds.getNumFolds();
+        List<Trial> trials = new ArrayList<>();
+        List<Trial> alive = new ArrayList<>();
+        for (String options : configurations) {
+            Trial trial = new Trial(options, space.displayName(options), numFolds);
+            try {
+                trial.prototype = space.createClassifier(options);
+                alive.add(trial);
+            } catch (Exception e) {
+                System.err.println("Invalid configuration " + trial.name + ": " + e.getMessage());
+                trial.status = Result.Status.FAILED;
+            }
+            trials.add(trial);
+        }
+
+        int done = 0;
+        List<Integer> stops = new ArrayList<>();
+        for (double checkpoint : CHECKPOINTS) {
+            // The pairwise test needs at least two folds
+            int stop = Math.max(2, (int) Math.round(checkpoint * numFolds));
+            if (stop < numFolds && (stops.isEmpty() || stop > stops.get(stops.size() - 1))) {
+                stops.add(stop);
+            }
+        }
+        stops.add(numFolds);
+
+        for (int stop : stops) {
+            runFolds(alive, data, folds, done, stop);
+            done = stop;
+            alive.removeIf(trial -> trial.status != Result.Status.OK);
+            if (stop < numFolds && alive.size() > 1) {
+                prune(alive, done);
+            }
+        }
+
+        for (Trial trial : alive) {
+            AggregateableEvaluation merged = new AggregateableEvaluation(data);
+            for (Evaluation fold : trial.foldEvaluations) {
+                merged.aggregate(fold);
+            }
+            trial.evaluation = merged;
+        }
+        trials.sort((a, b) -> {
+            if (a.evaluation == null || b.evaluation == null) {
+                return a.evaluation != null ? -1 : b.evaluation != null ? 1 : 0;
+            }
+            return Double.compare(b.evaluation.pctCorrect(), a.evaluation.pctCorrect());
+        });
+        return trials;
+    }
+
+    /**
+     * Run folds from (inclusive) to to (exclusive) of every trial
+     */
+    private void runFolds(List<Trial> trials, Instances data, FoldPlan folds, int from, int to) throws Exception {
+        List<Trial> owners = new ArrayList<>();
+        List<Integer> foldIndices = new ArrayList<>();
+        for (Trial trial : trials) {
+            for (int fold = from; fold < to; fold++) {
+                owners.add(trial);
+                foldIndices.add(fold);
+            }
+        }
+
+        if (executor == null) {
+            for (int i = 0; i < owners.size(); i++) {
+                checkStopped();
+                runFold(owners.get(i), data, folds, foldIndices.get(i));
+            }
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < owners.size(); i++) {
+            Trial trial = owners.get(i);
+            int fold = foldIndices.get(i);
+            futures.add(executor.submit(() -> {
+                checkStopped();
+                runFold(trial, data, folds, fold);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static void runFold(Trial trial, Instances data, FoldPlan folds, int fold) throws InterruptedException {
+        if (trial.status != Result.Status.OK) {
+            return; // Another fold of this configuration already failed
+        }
+        try {
+            List<FoldMetrics> metrics = new ArrayList<>(1);
+            trial.foldEvaluations[fold] = CrossValidator.crossValidateFold(trial.prototype, data, folds, fold, metrics);
+            trial.foldMetrics[fold] = metrics.get(0);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+                // The search was stopped, which is not the configuration's fault
+                throw new InterruptedException("Parameter search interrupted");
+            }
+            System.err.println("Error running " + trial.name + ": " + e.getMessage());
+            trial.status = Result.Status.FAILED;
+        }
+    }
+
+    /**
+     * Throw if the search was interrupted or is past its deadline
+     */
+    private void checkStopped() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Parameter search interrupted");
+        }
+        if (hasDeadline && System.nanoTime() - deadlineNanos >= 0) {
+            throw new InterruptedException("Parameter search ran out of time");
+        }
+    }
+
+    /**
+     * Drop the trials significantly worse than the one with the best mean accuracy
+     * over the first folds
+     */
+    private void prune(List<Trial> trials, int folds) {
+        Trial leader = null;
+        for (Trial trial : trials) {
+            if (leader == null || trial.meanAccuracy(folds) > leader.meanAccuracy(folds)) {
+                leader = trial;
+            }
+        }
+        double[] leaderAccuracies = leader.foldAccuracies(folds);
+        for (Trial trial : trials) {
+            if (trial != leader
+                && Racing.significantlyWorse(leaderAccuracies, trial.foldAccuracies(folds), significance)) {
+                trial.status = Result.Status.ELIMINATED;
+                trial.foldsEvaluated = folds;
+            }
+        }
+        trials.removeIf(trial -> trial.status != Result.Status.OK);
+    }
+
+    /**
+     * One configuration of a search and how far it got
+     */
+    public static class Trial {
+        private final String options;
+        private final String name;
+        private final Evaluation[] foldEvaluations;
+        private final FoldMetrics[] foldMetrics;
+        private Classifier prototype;
+        private volatile Result.Status status = Result.Status.OK;
+        private int foldsEvaluated;
+        private Evaluation evaluation;
+
+        Trial(String options, String name, int numFolds) {
+            this.options = options;
+            this.name = name;
+            this.foldEvaluations = new Evaluation[numFolds];
+            this.foldMetrics = new FoldMetrics[numFolds];
+            this.foldsEvaluated = numFolds;
+        }
+
+        public String getOptions() {
+            return options;
+        }
+
+        /**
+         * Name of the configuration in results, e.g. "Random Forest (-I 200 -K 4)"
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Untrained classifier configured with the trial's options
+         */
+        public Classifier getPrototype() {
+            return prototype;
+        }
+
+        /**
+         * OK if the configuration got through all folds, ELIMINATED if it was dropped
+         * early, FAILED if its options were invalid or a fold failed
+         */
+        public Result.Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Number of folds the configuration was evaluated on before it was dropped
+         */
+        public int getFoldsEvaluated() {
+            return foldsEvaluated;
+        }
+
+        /**
+         * Merged evaluation over all folds, or null unless the status is OK
+         */
+        public Evaluation getEvaluation() {
+            return evaluation;
+        }
+
+        public List<FoldMetrics> getFoldMetrics() {
+            return evaluation == null ? new ArrayList<>() : Arrays.asList(foldMetrics);
+        }
+
+        private double[] foldAccuracies(int folds) {
+            double[] accuracies = new double[folds];
+            for (int i = 0; i < folds; i++) {
+                accuracies[i] = foldMetrics[i].getAccuracy();
+            }
+            return accuracies;
+        }
+
+        private double meanAccuracy(int folds) {
+            double sum = 0;
+            for (double accuracy : foldAccuracies(folds)) {
+                sum += accuracy;
+            }
+            return sum / folds;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.wekaproject;
+
+import weka.classifiers.Classifier;
+import weka.core.OptionHandler;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Hyperparameter space of one approach, in Weka options: a grid of dimensions,
+ * each a list of alternative option strings, plus configurations listed in full.
+ * A configuration is applied on top of the approach's own options, replacing only
+ * the options it names, so a space just has to mention what it varies.
+ */
+public class ParameterSpace {
+    private final Approach approach;
+    private final List<List<String>> dimensions = new ArrayList<>();
+    private final List<String> configurations = new ArrayList<>();
+
+    public ParameterSpace(Approach approach) {
+        this.approach = approach;
+    }
+
+    /**
+     * The space searched for an approach unless another one is set on the engine,
+     * or null if the approach has nothing worth tuning. Every default space contains
+     * the approach's own settings, so a search never ends up worse than no search.
+     */
+    public static ParameterSpace defaultFor(Approach approach) {
+        ParameterSpace space = new ParameterSpace(approach);
+        switch (approach) {
+            case J48:
+                return space.addValues("-C", "0.1", "0.25", "0.5").addValues("-M", "2", "5", "10");
+            case RANDOM_FOREST:
+                return space.addValues("-I", "50", "100", "200").addValues("-K", "0", "2", "4");
+            case RANDOM_TREE:
+                return space.addValues("-K", "0", "2", "4").addValues("-M", "1", "5");
+            case IBK_3:
+            case IBK_5:
+            case IBK_7:
+                // Unweighted, 1/distance or 1-distance neighbour votes
+                return space.addChoice("", "-I", "-F");
+            case LOGISTIC:
+                return space.addValues("-R", "1.0E-8", "1.0E-4", "0.01", "1");
+            case MULTILAYER_PERCEPTRON:
+                return space.addValues("-L", "0.1", "0.3").addValues("-N", "200", "500");
+            case SVM:
+                return space.addValues("-C", "0.1", "1", "10");
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Parse a space from Weka options whose values may list alternatives separated
+     * by '|', e.g. "-I 50|100|200 -K 0|2|4". Options without a value are kept in
+     * every configuration.
+     */
+    public static ParameterSpace parse(Approach approach, String spec) throws Exception {
+        ParameterSpace space = new ParameterSpace(approach);
+        String[] tokens = Utils.splitOptions(spec);
+        for (int i = 0; i < tokens.length; i++) {
+            if (!isOptionName(tokens[i])) {
+                throw new Exception("Expected an option at '" + tokens[i] + "' in: " + spec);
+            }
+            if (i + 1 < tokens.length && !isOptionName(tokens[i + 1])) {
+                space.addValues(tokens[i], tokens[++i].split("\\|"));
+            } else {
+                space.addChoice(tokens[i]);
+            }
+        }
+        return space;
+    }
+
+    /**
+     * Alternative values of one option, e.g. addValues("-I", "50", "100", "200")
+     */
+    public ParameterSpace addValues(String option, String... values) {
+        String[] alternatives = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            alternatives[i] = option + " " + Utils.quote(values[i]);
+        }
+        return addChoice(alternatives);
+    }
+
+    /**
+     * Alternatives given as whole option strings, e.g. addChoice("", "-I", "-F")
+     * for flags that may also be left out
+     */
+    public ParameterSpace addChoice(String... alternatives) {
+        dimensions.add(Arrays.asList(alternatives));
+        return this;
+    }
+
+    /**
+     * A configuration given as a complete option string, tried besides the grid
+     */
+    public ParameterSpace addConfiguration(String options) {
+        configurations.add(options.trim());
+        return this;
+    }
+
+    public Approach getApproach() {
+        return approach;
+    }
+
+    /**
+     * Number of configurations in the grid, not counting the ones listed in full
+     */
+    public long getGridSize() {
+        long size = 1;
+        for (List<String> dimension : dimensions) {
+            size *= dimension.size();
+        }
+        return dimensions.isEmpty() ? 0 : size;
+    }
+
+    /**
+     * Option strings of the configurations to try: the whole grid if it has at most
+     * maxConfigurations entries, or maxConfigurations is 0, else that many grid
+     * points drawn at random. Configurations listed in full are always included.
+     */
+    public List<String> configurations(int maxConfigurations, Random random) {
+        long gridSize = getGridSize();
+        List<Long> points = new ArrayList<>();
+        if (maxConfigurations <= 0 || gridSize <= maxConfigurations) {
+            for (long point = 0; point < gridSize; point++) {
+                points.add(point);
+            }
+        } else {
+            Set<Long> drawn = new LinkedHashSet<>();
+            while (drawn.size() < maxConfigurations) {
+                drawn.add((long) (random.nextDouble() * gridSize));
+            }
+            points.addAll(drawn);
+            Collections.sort(points);
+        }
+
+        Set<String> options = new LinkedHashSet<>();
+        for (long point : points) {
+            options.add(gridPoint(point));
+        }
+        options.addAll(configurations);
+        return new ArrayList<>(options);
+    }
+
+    /**
+     * Options of one grid point, numbered with the last dimension changing fastest
+     */
+    private String gridPoint(long point) {
+        String[] chosen = new String[dimensions.size()];
+        for (int d = dimensions.size() - 1; d >= 0; d--) {
+            List<String> dimension = dimensions.get(d);
+            chosen[d] = dimension.get((int) (point % dimension.size()));
+            point /= dimension.size();
+        }
+        StringBuilder options = new StringBuilder();
+        for (String option : chosen) {
+            if (!option.isEmpty()) {
+                options.append(options.length() > 0 ? " " : "").append(option);
+            }
+        }
+        return options.toString();
+    }
+
+    /**
+     * A new classifier of the approach with the given options replacing its own
+     */
+    public Classifier createClassifier(String options) throws Exception {
+        Classifier classifier = approach.createClassifier();
+        if (options.isBlank()) {
+            return classifier;
+        }
+        if (!(classifier instanceof OptionHandler)) {
+            throw new Exception(approach.getDisplayName() + " takes no options");
+        }
+        OptionHandler handler = (OptionHandler) classifier;
+
+        // setOptions resets every option it isn't given, so pass the approach's own
+        // options along, minus those the configuration sets
+        String[] overrides = Utils.splitOptions(options);
+        String[] base = handler.getOptions();
+        for (int i = 0; i < overrides.length; i++) {
+            if (!isOptionName(overrides[i])) {
+                continue;
+            }
+            String name = overrides[i].substring(1);
+            if (i + 1 < overrides.length && !isOptionName(overrides[i + 1])) {
+                Utils.getOption(name, base);
+            } else {
+                Utils.getFlag(name, base);
+            }
+        }
+        List<String> merged = new ArrayList<>(Arrays.asList(overrides));
+        for (String token : base) {
+            if (!token.isEmpty()) {
+                merged.add(token);
+            }
+        }
+        handler.setOptions(merged.toArray(new String[0]));
+        return classifier;
+    }
+
+    /**
+     * Name of a configuration in results, e.g. "Random Forest (-I 200 -K 4)"
+     */
+    public String displayName(String options) {
+        return options.isBlank()
+            ? approach.getDisplayName()
+            : approach.getDisplayName() + " (" + options + ")";
+    }
+
+    private static boolean isOptionName(String token) {
+        if (!token.startsWith("-") || token.length() < 2) {
+            return false;
+        }
+        try {
+            Double.parseDouble(token);
+            return false; // A negative number is a value
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return approach.getDisplayName() + ": " + getGridSize() + " grid configurations, "
+            + configurations.size() + " listed";
+    }
+}
@@ -0,0 +1,436 @@
+package com.wekaproject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP endpoint for the best model of a ClassificationEngine, on the JDK's built-in
+ * server with one virtual thread per request.
+ *
+ * Rows from concurrent requests are combined into micro-batches: a dispatcher
+ * takes the first waiting row and keeps collecting until the batch window has
+ * passed since that row arrived or the batch is full, then scores the whole batch
+ * at once. There is one dispatcher per processor, so batches are scored in
+ * parallel and a row waits at most about one window before it is scored.
+ *
+ * POST /predict takes one row per line, comma separated, in the training attribute
+ * order: nominal values by label, '?' for missing. The class column may be left
+ * out or given (it is ignored). The answer is a JSON array with the predicted
+ * label and class distribution of each row. GET /stats returns request, row and
+ * batch counters, throughput and the p50/p99 latency of recent requests.
+ *
+ * Usage: PredictionServer [--port 8080] [--window-ms 2] [--max-batch 64] [--ensemble N] [--stacking] &lt;training.arff&gt;
+ */
+public class PredictionServer {
+    public static final Duration DEFAULT_BATCH_WINDOW = Duration.ofMillis(2);
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    private static final String USAGE =
+        "Usage: PredictionServer [--port 8080] [--window-ms 2] [--max-batch 64] [--ensemble N] [--stacking] <training.arff>";
+
+    /** Number of most recent request latencies the percentiles are computed over */
+    private static final int LATENCY_SAMPLES = 10000;
+
+    private final ClassificationEngine engine;
+    private final Instances header;
+    private final List<String> classValues;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingRow> queue = new LinkedBlockingQueue<>();
+    private final Stats stats = new Stats();
+    private HttpServer server;
+    private ExecutorService requestExecutor;
+    private List<Thread> dispatchers;
+
+    /**
+     * @param engine engine with a trained or loaded best model
+     * @param batchWindow longest time the first row of a batch waits for others
+     * @param maxBatchSize number of rows after which a batch is scored without waiting
+     */
+    public PredictionServer(ClassificationEngine engine, Duration batchWindow, int maxBatchSize) throws Exception {
+        this.engine = engine;
+        this.header = engine.getInputHeader();
+        this.classValues = engine.getClassValues();
+        this.batchWindowNanos = batchWindow.toNanos();
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        int port = 8080;
+        Duration window = DEFAULT_BATCH_WINDOW;
+        int maxBatch = DEFAULT_MAX_BATCH_SIZE;
+        int ensembleSize = 1;
+        boolean stacking = false;
+        String dataset = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "--window-ms":
+                        window = Duration.ofNanos((long) (Double.parseDouble(args[++i]) * 1e6));
+                        break;
+                    case "--max-batch":
+                        maxBatch = Integer.parseInt(args[++i]);
+                        break;
+                    case "--ensemble":
+                        ensembleSize = Integer.parseInt(args[++i]);
+                        break;
+                    case "--stacking":
+                        stacking = true;
+                        break;
+                    default:
+                        dataset = args[i];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            dataset = null;
+        }
+        if (dataset == null) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            ClassificationEngine engine = new ClassificationEngine(dataset);
+            engine.setEnsembleSize(ensembleSize);
+            engine.setEnsembleCombination(stacking
+                ? EnsembleModel.Combination.STACKING
+                : EnsembleModel.Combination.WEIGHTED_VOTE);
+            if (!engine.loadSavedModel()) {
+                engine.setParallel(true);
+                engine.setParallelFolds(true);
+                engine.runAllClassifications();
+            }
+            System.out.println("Best Algorithm: " + engine.getBestAlgorithmName());
+
+            PredictionServer server = new PredictionServer(engine, window, maxBatch);
+            server.start(port);
+            System.out.println("Serving predictions on http://localhost:" + server.getPort() + "/predict");
+        } catch (Exception e) {
+            System.err.println("Prediction server failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Start listening, on any free port if port is 0
+     */
+    public synchronized void start(int port) throws IOException {
+        // Without TCP_NODELAY small responses wait for the client's delayed ACK, about 40 ms each.
+        // The JDK server reads this once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/predict", this::handlePredict);
+        server.createContext("/stats", this::handleStats);
+        requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(requestExecutor);
+
+        dispatchers = new ArrayList<>();
+        int numDispatchers = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < numDispatchers; i++) {
+            Thread dispatcher = new Thread(this::dispatch, "prediction-dispatcher-" + i);
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+            dispatchers.add(dispatcher);
+        }
+        stats.start();
+        server.start();
+    }
+
+    public synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop accepting requests, give running ones a second to finish, then stop the dispatchers
+     */
+    public synchronized void stop() {
+        server.stop(1);
+        requestExecutor.shutdownNow();
+        for (Thread dispatcher : dispatchers) {
+            dispatcher.interrupt();
+        }
+    }
+
+    private void dispatch() {
+        List<PendingRow> batch = new ArrayList<>(maxBatchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            batch.clear();
+            try {
+                PendingRow first = queue.take();
+                batch.add(first);
+                long deadline = first.arrivalNanos + batchWindowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingRow next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                for (PendingRow pending : batch) {
+                    pending.result.completeExceptionally(e);
+                }
+                return;
+            }
+            score(batch);
+        }
+    }
+
+    private void score(List<PendingRow> batch) {
+        double[][] values = new double[batch.size()][];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = batch.get(i).values;
+        }
+        try {
+            double[][] distributions = engine.predictDistributions(values);
+            for (int i = 0; i < distributions.length; i++) {
+                batch.get(i).result.complete(distributions[i]);
+            }
+            stats.batchScored(batch.size());
+        } catch (Exception e) {
+            for (PendingRow pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "{\"error\": \"Use POST\"}");
+                return;
+            }
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            List<double[]> rows = new ArrayList<>();
+            for (String line : body.split("\r?\n")) {
+                if (!line.isBlank()) {
+                    rows.add(parseRow(line));
+                }
+            }
+
+            // Queue every row before waiting, so the rows of one request can share a batch
+            List<PendingRow> pending = new ArrayList<>(rows.size());
+            for (double[] row : rows) {
+                PendingRow entry = new PendingRow(row);
+                queue.add(entry);
+                pending.add(entry);
+            }
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < pending.size(); i++) {
+                if (i > 0) {
+                    json.append(", ");
+                }
+                appendPrediction(json, pending.get(i).result.get());
+            }
+            respond(exchange, 200, json.append("]").toString());
+            stats.requestServed(rows.size(), System.nanoTime() - start);
+        } catch (IllegalArgumentException e) {
+            stats.requestFailed();
+            respond(exchange, 400, "{\"error\": " + ResultExporter.jsonString(e.getMessage()) + "}");
+        } catch (Exception e) {
+            stats.requestFailed();
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            respond(exchange, 500, "{\"error\": " + ResultExporter.jsonString(String.valueOf(cause.getMessage())) + "}");
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, stats.toJson());
+    }
+
+    /**
+     * Attribute values of one CSV line in training attribute order, with or without the class column
+     */
+    double[] parseRow(String line) {
+        List<String> fields = splitCsv(line);
+        int numAttributes = header.numAttributes();
+        boolean hasClass = fields.size() == numAttributes;
+        if (!hasClass && fields.size() != numAttributes - 1) {
+            throw new IllegalArgumentException("Expected " + (numAttributes - 1) + " values, got " + fields.size());
+        }
+        double[] values = new double[numAttributes];
+        int field = 0;
+        for (int i = 0; i < numAttributes; i++) {
+            if (i == header.classIndex()) {
+                values[i] = Utils.missingValue();
+                if (hasClass) {
+                    field++;
+                }
+                continue;
+            }
+            String text = fields.get(field++);
+            Attribute attribute = header.attribute(i);
+            if (text.equals("?")) {
+                values[i] = Utils.missingValue();
+            } else if (attribute.isNominal()) {
+                int index = attribute.indexOfValue(text);
+                if (index < 0) {
+                    throw new IllegalArgumentException("Unknown value '" + text + "' for attribute " + attribute.name());
+                }
+                values[i] = index;
+            } else {
+                try {
+                    values[i] = Double.parseDouble(text);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number '" + text + "' for attribute " + attribute.name());
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Split on commas outside single or double quotes, removing the quotes and surrounding spaces
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    private void appendPrediction(StringBuilder json, double[] distribution) {
+        boolean unclassified = Utils.sum(distribution) == 0;
+        json.append("{\"label\": ")
+            .append(unclassified ? "null" : ResultExporter.jsonString(classValues.get(Utils.maxIndex(distribution))))
+            .append(", \"distribution\": {");
+        for (int c = 0; c < distribution.length; c++) {
+            if (c > 0) {
+                json.append(", ");
+            }
+            json.append(ResultExporter.jsonString(classValues.get(c))).append(": ").append(distribution[c]);
+        }
+        json.append("}}");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * A row waiting to be scored in the next batch
+     */
+    private static class PendingRow {
+        final double[] values;
+        final long arrivalNanos = System.nanoTime();
+        final CompletableFuture<double[]> result = new CompletableFuture<>();
+
+        PendingRow(double[] values) {
+            this.values = values;
+        }
+    }
+
+    /**
+     * Counters since start, and latencies of the most recent requests for the percentiles
+     */
+    private static class Stats {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failedRequests = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong batchedRows = new AtomicLong();
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private long latencyCount;
+        private long startNanos;
+
+        void start() {
+            startNanos = System.nanoTime();
+        }
+
+        void requestServed(int numRows, long latencyNanos) {
+            requests.incrementAndGet();
+            rows.addAndGet(numRows);
+            synchronized (latencies) {
+                latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = latencyNanos;
+            }
+        }
+
+        void requestFailed() {
+            failedRequests.incrementAndGet();
+        }
+
+        void batchScored(int size) {
+            batches.incrementAndGet();
+            batchedRows.addAndGet(size);
+        }
+
+        String toJson() {
+            long[] recent;
+            synchronized (latencies) {
+                recent = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+            }
+            Arrays.sort(recent);
+            double seconds = Math.max((System.nanoTime() - startNanos) / 1e9, 1e-9);
+            long batchCount = batches.get();
+            return String.format(Locale.ROOT,
+                "{\"requests\": %d, \"failedRequests\": %d, \"rows\": %d, \"batches\": %d, "
+                    + "\"meanBatchSize\": %.2f, \"requestsPerSecond\": %.1f, \"rowsPerSecond\": %.1f, "
+                    + "\"p50Millis\": %.3f, \"p99Millis\": %.3f}",
+                requests.get(), failedRequests.get(), rows.get(), batchCount,
+                batchCount == 0 ? 0.0 : (double) batchedRows.get() / batchCount,
+                requests.get() / seconds, rows.get() / seconds,
+                percentile(recent, 0.50) / 1e6, percentile(recent, 0.99) / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double fraction) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+        }
+    }
+}
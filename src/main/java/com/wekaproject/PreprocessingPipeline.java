@@ -0,0 +1,90 @@
+package com.wekaproject;
+
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.filters.Filter;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * The fitted filter chain that turned the original data into the data a model was
+ * trained on. Raw rows are pushed through the same filters one at a time with
+ * Filter.input/output, so prediction inputs get the training layout and scaling
+ * without refitting anything.
+ *
+ * The pipeline owns its filters: it keeps copies of the fitted filters it is given,
+ * because pushing a row through a filter goes through the filter's own input and
+ * output queues. Pipelines built from the same fitted filters, e.g. for ensemble
+ * members on one data view, can therefore transform at the same time, and nothing
+ * done to the originals afterwards changes the pipeline.
+ */
+public class PreprocessingPipeline implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Instances inputHeader;
+    private final Instances outputHeader;
+    private final Filter[] filters;
+
+    /**
+     * @param input data the first filter was fitted on (only its header is kept)
+     * @param filters fitted filters, in the order they were applied; the pipeline copies them
+     * @param output data the model is trained on (only its header is kept)
+     */
+    public PreprocessingPipeline(Instances input, List<Filter> filters, Instances output) throws Exception {
+        this.inputHeader = new Instances(input, 0);
+        this.outputHeader = new Instances(output, 0);
+        this.filters = new Filter[filters.size()];
+        for (int i = 0; i < this.filters.length; i++) {
+            this.filters[i] = Filter.makeCopy(filters.get(i));
+        }
+    }
+
+    /**
+     * Structure of the raw rows the pipeline accepts
+     */
+    public Instances getInputHeader() {
+        return inputHeader;
+    }
+
+    /**
+     * Structure of the rows the pipeline produces, i.e. what the model was trained on
+     */
+    public Instances getOutputHeader() {
+        return outputHeader;
+    }
+
+    /**
+     * Build a raw row from attribute values in original attribute order.
+     * The class value is left missing.
+     */
+    public Instance createInput(double[] attributeValues) {
+        double[] values = new double[inputHeader.numAttributes()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i < attributeValues.length && i != inputHeader.classIndex()
+                ? attributeValues[i]
+                : Utils.missingValue();
+        }
+        Instance instance = new DenseInstance(1.0, values);
+        instance.setDataset(inputHeader);
+        return instance;
+    }
+
+    /**
+     * Transform one raw row into the model's input format
+     */
+    public synchronized Instance transform(Instance raw) throws Exception {
+        Instance current = raw;
+        for (Filter filter : filters) {
+            // Fitted filters convert each row immediately, nothing gets buffered
+            if (!filter.input(current)) {
+                throw new Exception("Filter " + filter.getClass().getSimpleName() + " did not produce output");
+            }
+            current = filter.output();
+        }
+        current.setDataset(outputHeader);
+        return current;
+    }
+}
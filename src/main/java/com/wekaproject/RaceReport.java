@@ -0,0 +1,92 @@
+package com.wekaproject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What a racing run did: the rounds it went through and how much evaluation work
+ * it saved. The work of an exhaustive run is estimated by scaling the last measured
+ * fold times of each eliminated approach linearly to the full data; for approaches
+ * that cost more than linear in the rows the real saving is larger. When few
+ * approaches are dropped the rounds cost more than they save, and the saving is
+ * negative.
+ */
+public class RaceReport {
+    private final List<String> rounds = new ArrayList<>();
+    private long racingWorkMillis;
+    private long estimatedExhaustiveWorkMillis;
+    private long wallTimeMillis;
+    private int eliminated;
+
+    void addRound(int sampleSize, int candidates, List<String> dropped) {
+        rounds.add(String.format("%d rows: %d candidates, dropped %s",
+            sampleSize, candidates, dropped.isEmpty() ? "none" : String.join(", ", dropped)));
+        eliminated += dropped.size();
+    }
+
+    void addWork(long racingMillis, long exhaustiveMillis) {
+        racingWorkMillis += racingMillis;
+        estimatedExhaustiveWorkMillis += exhaustiveMillis;
+    }
+
+    void setWallTimeMillis(long wallTimeMillis) {
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    public List<String> getRounds() {
+        return rounds;
+    }
+
+    public int getEliminated() {
+        return eliminated;
+    }
+
+    /**
+     * Training and testing time summed over all folds of all rounds
+     */
+    public long getRacingWorkMillis() {
+        return racingWorkMillis;
+    }
+
+    /**
+     * Estimated training and testing time of full cross-validation of every approach
+     */
+    public long getEstimatedExhaustiveWorkMillis() {
+        return estimatedExhaustiveWorkMillis;
+    }
+
+    /**
+     * Estimated work saved by racing, negative when the rounds cost more than the
+     * eliminations saved
+     */
+    public long getEstimatedSavedMillis() {
+        return estimatedExhaustiveWorkMillis - racingWorkMillis;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    /**
+     * The estimated saving as "saved about N s", or "cost about N s extra" when racing didn't pay off
+     */
+    public String describeSaving() {
+        long saved = getEstimatedSavedMillis();
+        return saved >= 0
+            ? String.format("saved about %.1f s", saved / 1000.0)
+            : String.format("cost about %.1f s extra", -saved / 1000.0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "Racing eliminated %d approaches in %d round%s: %.1f s of evaluation work instead of about %.1f s (%s)",
+            eliminated,
+            rounds.size(),
+            rounds.size() == 1 ? "" : "s",
+            racingWorkMillis / 1000.0,
+            estimatedExhaustiveWorkMillis / 1000.0,
+            describeSaving()
+        );
+    }
+}
@@ -0,0 +1,198 @@
+package com.wekaproject;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Instances that share the rows of another dataset without copying them and
+ * reject every change to the dataset. Copying it with new Instances(...) gives
+ * an ordinary mutable dataset.
+ */
+public class ReadOnlyInstances extends Instances {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Read-only view of the rows of source
+     */
+    public static ReadOnlyInstances of(Instances source) {
+        return of(source, source);
+    }
+
+    /**
+     * Wrap freshly read rows under the given header, without copying them
+     */
+    public static ReadOnlyInstances of(Instances header, Collection<Instance> rows) {
+        // Filled after construction, so the dataset isn't handed to the rows half-built
+        ReadOnlyInstances view = new ReadOnlyInstances(header, rows.size());
+        for (Instance instance : rows) {
+            instance.setDataset(view);
+            view.m_Instances.add(instance);
+        }
+        return view;
+    }
+
+    /**
+     * Empty dataset with the given header, for subclasses that fill m_Instances themselves
+     */
+    protected ReadOnlyInstances(Instances header, int capacity) {
+        super(header, capacity);
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Shared dataset view is read-only, take a mutable copy first");
+    }
+
+    @Override
+    public boolean add(Instance instance) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(int index, Instance instance) {
+        throw readOnly();
+    }
+
+    @Override
+    public Instance set(int index, Instance instance) {
+        throw readOnly();
+    }
+
+    @Override
+    public Instance remove(int index) {
+        throw readOnly();
+    }
+
+    @Override
+    public void delete() {
+        throw readOnly();
+    }
+
+    @Override
+    public void delete(int index) {
+        throw readOnly();
+    }
+
+    @Override
+    public void deleteAttributeAt(int position) {
+        throw readOnly();
+    }
+
+    @Override
+    public void deleteAttributeType(int attType) {
+        throw readOnly();
+    }
+
+    @Override
+    public void deleteStringAttributes() {
+        throw readOnly();
+    }
+
+    @Override
+    public void deleteWithMissing(int attIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public void deleteWithMissing(Attribute att) {
+        throw readOnly();
+    }
+
+    @Override
+    public void deleteWithMissingClass() {
+        throw readOnly();
+    }
+
+    @Override
+    public void insertAttributeAt(Attribute att, int position) {
+        throw readOnly();
+    }
+
+    @Override
+    public void replaceAttributeAt(Attribute att, int position) {
+        throw readOnly();
+    }
+
+    @Override
+    public void randomize(Random random) {
+        throw readOnly();
+    }
+
+    @Override
+    public void renameAttribute(int att, String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public void renameAttribute(Attribute att, String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public void renameAttributeValue(int att, int val, String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public void renameAttributeValue(Attribute att, String val, String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setAttributeWeight(int att, double weight) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setAttributeWeight(Attribute att, double weight) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setClass(Attribute att) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setClassIndex(int classIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setRelationName(String newName) {
+        throw readOnly();
+    }
+
+    @Override
+    public void sort(int attIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public void sort(Attribute att) {
+        throw readOnly();
+    }
+
+    @Override
+    public void stableSort(int attIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public void stableSort(Attribute att) {
+        throw readOnly();
+    }
+
+    @Override
+    public void stratify(int numFolds) {
+        throw readOnly();
+    }
+
+    @Override
+    public void swap(int i, int j) {
+        throw readOnly();
+    }
+}
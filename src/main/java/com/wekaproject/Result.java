@@ -1,10 +1,34 @@
 package com.wekaproject;
 
-public class Result {
+import java.io.Serializable;
+
+public class Result implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * How the evaluation of an approach ended. Only OK results have meaningful accuracy.
+     */
+    public enum Status {
+        OK, TIMED_OUT, CANCELLED, FAILED,
+        /** Dropped by racing; accuracy and counts are from the last sample it was evaluated on */
+        ELIMINATED
+    }
+
     private String algorithmName;
     private double accuracy;
     private int correctlyClassified;
     private int totalInstances;
+    private Status status = Status.OK;
+
+    // Cost of the cross-validation, summed over folds; -1 where it couldn't be measured
+    private long trainingTimeMillis;
+    private long evaluationTimeMillis;
+    private long[] foldTimesMillis = new long[0];
+    private double[] foldAccuracies = new double[0];
+    private long allocatedBytes = -1;
+    private long modelSizeBytes = -1;
+    // Taken from the evaluation cache instead of evaluated in this run
+    private boolean cached;
 
     public Result(String algorithmName, double accuracy, int correctlyClassified, int totalInstances) {
         this.algorithmName = algorithmName;
@@ -45,10 +69,120 @@ public class Result {
         this.totalInstances = totalInstances;
     }
 
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * Time spent building models across all folds
+     */
+    public long getTrainingTimeMillis() {
+        return trainingTimeMillis;
+    }
+
+    public void setTrainingTimeMillis(long trainingTimeMillis) {
+        this.trainingTimeMillis = trainingTimeMillis;
+    }
+
+    /**
+     * Time spent classifying the test folds
+     */
+    public long getEvaluationTimeMillis() {
+        return evaluationTimeMillis;
+    }
+
+    public void setEvaluationTimeMillis(long evaluationTimeMillis) {
+        this.evaluationTimeMillis = evaluationTimeMillis;
+    }
+
+    /**
+     * Training plus evaluation time of each fold, in fold order
+     */
+    public long[] getFoldTimesMillis() {
+        return foldTimesMillis;
+    }
+
+    public void setFoldTimesMillis(long[] foldTimesMillis) {
+        this.foldTimesMillis = foldTimesMillis;
+    }
+
+    /**
+     * Accuracy in percent of each fold, in fold order
+     */
+    public double[] getFoldAccuracies() {
+        return foldAccuracies;
+    }
+
+    public void setFoldAccuracies(double[] foldAccuracies) {
+        this.foldAccuracies = foldAccuracies;
+    }
+
+    /**
+     * Bytes allocated while cross-validating, from the per-thread allocation counters
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public void setAllocatedBytes(long allocatedBytes) {
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Serialized size of a model trained on one fold's training data
+     */
+    public long getModelSizeBytes() {
+        return modelSizeBytes;
+    }
+
+    public void setModelSizeBytes(long modelSizeBytes) {
+        this.modelSizeBytes = modelSizeBytes;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    /**
+     * Fill in the cost fields from the metrics of each fold
+     */
+    public void setFoldMetrics(java.util.List<FoldMetrics> folds) {
+        trainingTimeMillis = 0;
+        evaluationTimeMillis = 0;
+        allocatedBytes = folds.isEmpty() ? -1 : 0;
+        modelSizeBytes = -1;
+        foldTimesMillis = new long[folds.size()];
+        foldAccuracies = new double[folds.size()];
+        for (int i = 0; i < folds.size(); i++) {
+            FoldMetrics fold = folds.get(i);
+            trainingTimeMillis += fold.getTrainingTimeMillis();
+            evaluationTimeMillis += fold.getEvaluationTimeMillis();
+            foldTimesMillis[i] = fold.getTotalTimeMillis();
+            foldAccuracies[i] = fold.getAccuracy();
+            if (allocatedBytes >= 0) {
+                allocatedBytes = fold.getAllocatedBytes() < 0 ? -1 : allocatedBytes + fold.getAllocatedBytes();
+            }
+            if (fold.getModelSizeBytes() >= 0) {
+                modelSizeBytes = fold.getModelSizeBytes();
+            }
+        }
+    }
+
     @Override
     public String toString() {
+        if (status != Status.OK && status != Status.ELIMINATED) {
+            return algorithmName + ": " + status;
+        }
         return String.format(
-            "%s: %.2f%% (%d/%d)",
+            status == Status.ELIMINATED ? "%s: %.2f%% (%d/%d), eliminated" : "%s: %.2f%% (%d/%d)",
             algorithmName,
             accuracy,
             correctlyClassified,
@@ -0,0 +1,191 @@
+package com.wekaproject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes comparison results with their timing and memory metrics as CSV or JSON,
+ * for one dataset or as a leaderboard over several.
+ * Per-fold times go into a single CSV column separated by semicolons.
+ */
+public class ResultExporter {
+    private static final String CSV_COLUMNS = "algorithm,status,accuracy,correctly_classified,total_instances,"
+        + "training_time_ms,evaluation_time_ms,fold_times_ms,allocated_bytes,model_size_bytes";
+
+    /**
+     * Write the results in the format given by the file extension (.json, anything else is CSV)
+     */
+    public static void export(List<Result> results, Path file) throws IOException {
+        String content = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json")
+            ? toJson(results)
+            : toCsv(results);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+    public static String toCsv(List<Result> results) {
+        StringBuilder csv = new StringBuilder();
+        csv.append(CSV_COLUMNS).append('\n');
+        for (Result result : results) {
+            appendCsv(csv, result);
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    public static String toJson(List<Result> results) {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            json.append("  ");
+            appendJson(json, results.get(i));
+            json.append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        return json.append("]\n").toString();
+    }
+
+    /**
+     * Write the results of several datasets as one leaderboard, in the format given
+     * by the file extension (.json, anything else is CSV). Each dataset's results are
+     * ranked by accuracy; only fully evaluated results get a rank.
+     */
+    public static void exportLeaderboard(Map<String, List<Result>> resultsByDataset, Path file) throws IOException {
+        String content = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json")
+            ? toLeaderboardJson(resultsByDataset)
+            : toLeaderboardCsv(resultsByDataset);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+    public static String toLeaderboardCsv(Map<String, List<Result>> resultsByDataset) {
+        StringBuilder csv = new StringBuilder();
+        csv.append("dataset,rank,").append(CSV_COLUMNS).append('\n');
+        for (Map.Entry<String, List<Result>> dataset : resultsByDataset.entrySet()) {
+            List<Result> ranked = ranked(dataset.getValue());
+            for (int i = 0; i < ranked.size(); i++) {
+                Result result = ranked.get(i);
+                csv.append(csvField(dataset.getKey())).append(',')
+                    .append(result.getStatus() == Result.Status.OK ? String.valueOf(i + 1) : "").append(',');
+                appendCsv(csv, result);
+                csv.append('\n');
+            }
+        }
+        return csv.toString();
+    }
+
+    public static String toLeaderboardJson(Map<String, List<Result>> resultsByDataset) {
+        StringBuilder json = new StringBuilder("[\n");
+        int remaining = resultsByDataset.size();
+        for (Map.Entry<String, List<Result>> dataset : resultsByDataset.entrySet()) {
+            List<Result> ranked = ranked(dataset.getValue());
+            boolean hasBest = !ranked.isEmpty() && ranked.get(0).getStatus() == Result.Status.OK;
+            json.append("  {\"dataset\": ").append(jsonString(dataset.getKey()))
+                .append(", \"best\": ").append(hasBest ? jsonString(ranked.get(0).getAlgorithmName()) : "null")
+                .append(", \"results\": [\n");
+            for (int i = 0; i < ranked.size(); i++) {
+                json.append("    ");
+                appendJson(json, ranked.get(i));
+                json.append(i < ranked.size() - 1 ? ",\n" : "\n");
+            }
+            json.append(--remaining > 0 ? "  ]},\n" : "  ]}\n");
+        }
+        return json.append("]\n").toString();
+    }
+
+    /**
+     * Fully evaluated results first, each group by accuracy descending
+     */
+    private static List<Result> ranked(List<Result> results) {
+        List<Result> ranked = new ArrayList<>(results);
+        ranked.sort((r1, r2) -> {
+            boolean ok1 = r1.getStatus() == Result.Status.OK;
+            boolean ok2 = r2.getStatus() == Result.Status.OK;
+            if (ok1 != ok2) {
+                return ok1 ? -1 : 1;
+            }
+            return Double.compare(r2.getAccuracy(), r1.getAccuracy());
+        });
+        return ranked;
+    }
+
+    private static void appendCsv(StringBuilder csv, Result result) {
+        csv.append(csvField(result.getAlgorithmName())).append(',')
+            .append(result.getStatus()).append(',')
+            .append(String.format(Locale.ROOT, "%.4f", result.getAccuracy())).append(',')
+            .append(result.getCorrectlyClassified()).append(',')
+            .append(result.getTotalInstances()).append(',')
+            .append(result.getTrainingTimeMillis()).append(',')
+            .append(result.getEvaluationTimeMillis()).append(',')
+            .append(join(result.getFoldTimesMillis(), ";")).append(',')
+            .append(result.getAllocatedBytes()).append(',')
+            .append(result.getModelSizeBytes());
+    }
+
+    private static void appendJson(StringBuilder json, Result result) {
+        json.append("{")
+            .append("\"algorithm\": ").append(jsonString(result.getAlgorithmName()))
+            .append(", \"status\": \"").append(result.getStatus()).append('"')
+            .append(", \"accuracy\": ").append(String.format(Locale.ROOT, "%.4f", result.getAccuracy()))
+            .append(", \"correctlyClassified\": ").append(result.getCorrectlyClassified())
+            .append(", \"totalInstances\": ").append(result.getTotalInstances())
+            .append(", \"trainingTimeMillis\": ").append(result.getTrainingTimeMillis())
+            .append(", \"evaluationTimeMillis\": ").append(result.getEvaluationTimeMillis())
+            .append(", \"foldTimesMillis\": [").append(join(result.getFoldTimesMillis(), ", ")).append(']')
+            .append(", \"allocatedBytes\": ").append(result.getAllocatedBytes())
+            .append(", \"modelSizeBytes\": ").append(result.getModelSizeBytes())
+            .append('}');
+    }
+
+    private static String join(long[] values, String separator) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                joined.append(separator);
+            }
+            joined.append(values[i]);
+        }
+        return joined.toString();
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * JSON string literal of value, with quotes, backslashes and control characters escaped
+     */
+    static String jsonString(String value) {
+        StringBuilder escaped = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    escaped.append("\\\"");
+                    break;
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+            }
+        }
+        return escaped.append('"').toString();
+    }
+}
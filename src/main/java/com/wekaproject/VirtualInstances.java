@@ -0,0 +1,78 @@
+package com.wekaproject;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Enumeration;
+
+/**
+ * Read-only Instances that keep no row list of their own and hand out rows on
+ * request. Every way Weka reads rows from an Instances ends up in the methods
+ * overridden here; the ones that would write to the row list are already
+ * rejected by ReadOnlyInstances.
+ */
+public abstract class VirtualInstances extends ReadOnlyInstances {
+    private static final long serialVersionUID = 1L;
+
+    protected VirtualInstances(Instances header) {
+        super(header, 0);
+    }
+
+    protected abstract int rowCount();
+
+    protected abstract Instance row(int index);
+
+    @Override
+    public int numInstances() {
+        return rowCount();
+    }
+
+    @Override
+    public int size() {
+        return rowCount();
+    }
+
+    @Override
+    public Instance instance(int index) {
+        checkIndex(index);
+        return row(index);
+    }
+
+    @Override
+    public Instance get(int index) {
+        return instance(index);
+    }
+
+    @Override
+    public Instance firstInstance() {
+        return rowCount() == 0 ? null : row(0);
+    }
+
+    @Override
+    public Instance lastInstance() {
+        return rowCount() == 0 ? null : row(rowCount() - 1);
+    }
+
+    @Override
+    public Enumeration<Instance> enumerateInstances() {
+        return new Enumeration<Instance>() {
+            private int next;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < rowCount();
+            }
+
+            @Override
+            public Instance nextElement() {
+                return row(next++);
+            }
+        };
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= rowCount()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rowCount());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.wekaproject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import weka.core.Instances;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassificationEngineTest {
+
+    @Test
+    void savedModelIsRestoredWithoutLoadingTheData(@TempDir Path dir) throws Exception {
+        Instances data = TestData.grid(300, 3, 6, 3, 4);
+        Path dataset = dir.resolve("grid.arff");
+        Files.writeString(dataset, data.toString());
+
+        DatasetInspector inspector = new DatasetInspector(dataset.toString());
+        assertNull(ClassificationEngine.fromSavedModel(inspector));
+
+        ClassificationEngine trained = new ClassificationEngine(inspector);
+        trained.runAllClassifications();
+        assertTrue(Files.isRegularFile(ModelStore.modelPathFor(dataset.toString())));
+
+        ClassificationEngine restored = ClassificationEngine.fromSavedModel(new DatasetInspector(dataset.toString()));
+        assertNotNull(restored);
+        assertTrue(restored.isTrained());
+        assertEquals(trained.getBestAlgorithmName(), restored.getBestAlgorithmName());
+        assertEquals(trained.getResults().size(), restored.getResults().size());
+        assertArrayEquals(trained.predictBatch(data), restored.predictBatch(data));
+        assertFalse(restored.hasLoadedData());
+
+        // Rows are loaded on demand
+        assertEquals(data.numInstances(), restored.getDataProcessor().getNumInstances());
+        assertTrue(restored.hasLoadedData());
+    }
+}
@@ -0,0 +1,103 @@
+package com.wekaproject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ColumnarCacheTest {
+
+    @Test
+    void loadGivesBackTheRowsAsColumns(@TempDir Path dir) throws Exception {
+        Instances data = mixed(500, 1);
+        Path dataset = write(dir, data);
+        DatasetFingerprint fingerprint = DatasetFingerprint.of(dataset);
+        ColumnarCache.write(dataset.toString(), data, fingerprint);
+
+        ColumnarCache.Cached cached = ColumnarCache.load(dataset.toString());
+        assertNotNull(cached);
+        assertEquals(fingerprint.getContentHash(), cached.getFingerprint().getContentHash());
+        Instances loaded = cached.getData();
+        assertInstanceOf(ColumnarInstances.class, loaded);
+        assertEquals(data.classIndex(), loaded.classIndex());
+        assertEquals(data.numInstances(), loaded.numInstances());
+        for (int r = 0; r < data.numInstances(); r++) {
+            assertArrayEquals(data.instance(r).toDoubleArray(), loaded.instance(r).toDoubleArray(), "row " + r);
+            assertEquals(data.instance(r).weight(), loaded.instance(r).weight(), "weight of row " + r);
+            assertEquals(data.instance(r).toString(), loaded.instance(r).toString());
+        }
+    }
+
+    @Test
+    void changedSourceIsNotLoaded(@TempDir Path dir) throws Exception {
+        Instances data = mixed(100, 2);
+        Path dataset = write(dir, data);
+        ColumnarCache.write(dataset.toString(), data, DatasetFingerprint.of(dataset));
+
+        data.instance(0).setValue(1, 42.0);
+        Files.writeString(dataset, data.toString() + "\n");
+        assertNull(ColumnarCache.load(dataset.toString()));
+    }
+
+    @Test
+    void processorTakesTheFingerprintFromTheCache(@TempDir Path dir) throws Exception {
+        Instances data = mixed(100, 3);
+        Path dataset = write(dir, data);
+        Files.setLastModifiedTime(dataset, FileTime.fromMillis(1_000_000L));
+
+        // A hash nobody would compute shows the fingerprint was taken over, not recomputed
+        DatasetFingerprint stored = new DatasetFingerprint(Files.size(dataset), 1_000_000L, "from-the-cache");
+        ColumnarCache.write(dataset.toString(), data, stored);
+
+        DataProcessor processor = new DataProcessor(dataset.toString());
+        assertEquals("from-the-cache", processor.getFingerprint().getContentHash());
+        assertEquals(data.numInstances(), processor.getNumInstances());
+    }
+
+    private static Path write(Path dir, Instances data) throws Exception {
+        Path file = dir.resolve(data.relationName() + ".arff");
+        Files.writeString(file, data.toString());
+        return file;
+    }
+
+    /**
+     * A numeric attribute, a nominal one with too many values for byte codes, a
+     * small nominal class, some missing values and uneven weights
+     */
+    private static Instances mixed(int numRows, long seed) {
+        List<String> codes = new ArrayList<>();
+        for (int v = 0; v < 300; v++) {
+            codes.add("v" + v);
+        }
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("code", codes));
+        attributes.add(new Attribute("x"));
+        attributes.add(new Attribute("class", List.of("a", "b")));
+        Instances data = new Instances("mixed", attributes, numRows);
+        data.setClassIndex(2);
+
+        Random random = new Random(seed);
+        for (int i = 0; i < numRows; i++) {
+            double code = random.nextDouble() < 0.1 ? Utils.missingValue() : random.nextInt(codes.size());
+            double x = random.nextDouble() < 0.1 ? Utils.missingValue() : random.nextGaussian();
+            double weight = i % 7 == 0 ? 2.5 : 1.0;
+            data.add(new DenseInstance(weight, new double[]{code, x, random.nextInt(2)}));
+        }
+        return data;
+    }
+}
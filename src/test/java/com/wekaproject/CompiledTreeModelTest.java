@@ -0,0 +1,179 @@
+package com.wekaproject;
+
+import org.junit.jupiter.api.Test;
+import weka.classifiers.Classifier;
+import weka.classifiers.trees.J48;
+import weka.classifiers.trees.RandomForest;
+import weka.classifiers.trees.RandomTree;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompiledTreeModelTest {
+
+    @Test
+    void prunedJ48() throws Exception {
+        assertSameAsWeka(new J48(), mixed(600, 0, 1), mixed(300, 0.1, 2));
+    }
+
+    @Test
+    void unprunedJ48WithMissingValues() throws Exception {
+        J48 tree = new J48();
+        tree.setUnpruned(true);
+        tree.setMinNumObj(1);
+        assertSameAsWeka(tree, mixed(600, 0.15, 3), mixed(300, 0.15, 4));
+    }
+
+    @Test
+    void j48WithBinarySplits() throws Exception {
+        J48 tree = new J48();
+        tree.setBinarySplits(true);
+        tree.setUnpruned(true);
+        assertSameAsWeka(tree, mixed(600, 0.1, 5), mixed(300, 0.1, 6));
+    }
+
+    @Test
+    void j48WithEmptyBranches() throws Exception {
+        // The colour value "grey" never occurs in training, so its branch is empty;
+        // queries with it take the parent's class counts
+        J48 tree = new J48();
+        tree.setUnpruned(true);
+        tree.setMinNumObj(1);
+        assertSameAsWeka(tree, mixed(400, 0.05, 7), withUnseenColour(mixed(300, 0.05, 8), 9));
+    }
+
+    @Test
+    void j48ThatIsASingleLeaf() throws Exception {
+        Instances train = mixed(40, 0, 10);
+        for (int i = 0; i < train.numInstances(); i++) {
+            train.instance(i).setClassValue(i % 3 == 0 ? "c1" : "c0");
+        }
+        J48 tree = new J48();
+        tree.setMinNumObj(30);
+        assertSameAsWeka(tree, train, mixed(100, 0.1, 11));
+    }
+
+    @Test
+    void randomTree() throws Exception {
+        RandomTree tree = new RandomTree();
+        tree.setSeed(3);
+        assertSameAsWeka(tree, mixed(600, 0.1, 12), mixed(300, 0.1, 13));
+    }
+
+    @Test
+    void randomTreeWithLimitedDepthAndUnclassifiedRows() throws Exception {
+        // Branches for the unseen colour have no distribution of their own
+        RandomTree tree = new RandomTree();
+        tree.setMaxDepth(6);
+        tree.setAllowUnclassifiedInstances(true);
+        assertSameAsWeka(tree, mixed(600, 0.1, 14), withUnseenColour(mixed(300, 0.1, 15), 22));
+
+        RandomTree fallback = new RandomTree();
+        fallback.setMaxDepth(6);
+        assertSameAsWeka(fallback, mixed(600, 0.1, 14), withUnseenColour(mixed(300, 0.1, 15), 22));
+    }
+
+    @Test
+    void randomTreeOfOneNode() throws Exception {
+        Instances train = mixed(50, 0, 16);
+        for (int i = 0; i < train.numInstances(); i++) {
+            train.instance(i).setClassValue("c2");
+        }
+        assertSameAsWeka(new RandomTree(), train, mixed(50, 0.1, 17));
+    }
+
+    @Test
+    void randomForest() throws Exception {
+        RandomForest forest = new RandomForest();
+        forest.setNumIterations(25);
+        assertSameAsWeka(forest, mixed(600, 0.1, 18), mixed(300, 0.1, 19));
+    }
+
+    @Test
+    void randomForestVotingInParallel() throws Exception {
+        RandomForest forest = new RandomForest();
+        forest.setNumIterations(25);
+        Instances train = mixed(600, 0.1, 20);
+        Instances test = mixed(300, 0.1, 21);
+        forest.buildClassifier(train);
+        CompiledTreeModel compiled = CompiledTreeModel.compile(forest, new Instances(train, 0));
+        assertNotNull(compiled);
+        compiled.setParallelVote(true);
+        assertSameDistributions(forest, compiled, test);
+    }
+
+    /**
+     * Set the colour of about a third of the rows to "grey", which no training row has
+     */
+    private static Instances withUnseenColour(Instances rows, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < rows.numInstances(); i++) {
+            if (random.nextDouble() < 0.3) {
+                rows.instance(i).setValue(0, "grey");
+            }
+        }
+        return rows;
+    }
+
+    private static void assertSameAsWeka(Classifier model, Instances train, Instances test) throws Exception {
+        model.buildClassifier(train);
+        CompiledTreeModel compiled = CompiledTreeModel.compile(model, new Instances(train, 0));
+        assertNotNull(compiled, "compiled form of " + model.getClass().getSimpleName());
+        assertSameDistributions(model, compiled, train);
+        assertSameDistributions(model, compiled, test);
+    }
+
+    private static void assertSameDistributions(Classifier model, CompiledTreeModel compiled, Instances rows)
+        throws Exception {
+        for (int i = 0; i < rows.numInstances(); i++) {
+            // Bit for bit, not just close
+            assertArrayEquals(model.distributionForInstance(rows.instance(i)),
+                compiled.distributionForInstance(rows.instance(i)), 0, "row " + i);
+            assertEquals(model.classifyInstance(rows.instance(i)), compiled.classifyInstance(rows.instance(i)),
+                "prediction for row " + i);
+        }
+        assertTrue(compiled.matches(model, rows));
+    }
+
+    /**
+     * A nominal attribute with a value that is only ever used by tests, two numeric
+     * attributes and a three-class nominal class, with the given share of the
+     * attribute values missing
+     */
+    private static Instances mixed(int numRows, double missing, long seed) {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("colour", List.of("red", "green", "blue", "grey")));
+        attributes.add(new Attribute("x"));
+        attributes.add(new Attribute("y"));
+        attributes.add(new Attribute("class", List.of("c0", "c1", "c2")));
+        Instances data = new Instances("mixed", attributes, numRows);
+        data.setClassIndex(3);
+
+        Random random = new Random(seed);
+        for (int i = 0; i < numRows; i++) {
+            int colour = random.nextInt(3);
+            double x = random.nextGaussian();
+            double y = Math.round(random.nextGaussian() * 4) / 4.0;
+            double score = x + (colour == 1 ? 1 : 0) - (y > 0.5 ? 1 : 0) + random.nextGaussian() * 0.5;
+            double label = score < -0.5 ? 0 : score < 0.7 ? 1 : 2;
+            double[] values = {colour, x, y, label};
+            for (int a = 0; a < 3; a++) {
+                if (random.nextDouble() < missing) {
+                    values[a] = Utils.missingValue();
+                }
+            }
+            data.add(new DenseInstance(1.0, values));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,132 @@
+package com.wekaproject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import weka.classifiers.functions.Logistic;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EnsembleModelTest {
+    private static final int MEMBERS = 4;
+    private static final int PASSES = 25;
+    private static final int TRANSFORM_PASSES = 200;
+
+    /**
+     * Members on the same view are built the way the engine builds them, from one
+     * DataProcessor's fitted filters, and then predict at the same time. Any row one
+     * member picked up from another would change the combined distribution.
+     */
+    @Test
+    void membersOnOneViewDontGetEachOthersRows(@TempDir Path dir) throws Exception {
+        DataProcessor processor = new DataProcessor(writeDataset(dir.resolve("mixed.arff"), 1000).toString());
+        Instances view = processor.getView(DataView.NUMERIC_NORMALIZED);
+        List<Filter> filters = processor.getFittedFilters(DataView.NUMERIC_NORMALIZED);
+
+        List<EnsembleModel.Member> members = new ArrayList<>();
+        for (int m = 0; m < MEMBERS; m++) {
+            Logistic model = new Logistic();
+            // Different ridges give members different distributions, so a swap can't cancel out
+            model.setRidge(Math.pow(10, -m));
+            model.buildClassifier(view);
+            PreprocessingPipeline pipeline = new PreprocessingPipeline(processor.getOriginalData(), filters, view);
+            members.add(new EnsembleModel.Member("Logistic " + m, model, pipeline, 1.0 + m));
+        }
+        EnsembleModel ensemble = new EnsembleModel(members, EnsembleModel.Combination.WEIGHTED_VOTE);
+
+        Instances rows = processor.getOriginalData();
+        ensemble.setParallelMembers(false);
+        double[][] expected = new double[rows.numInstances()][];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = ensemble.distributionForInstance(rows.instance(i));
+        }
+
+        ensemble.setParallelMembers(true);
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (int i = 0; i < expected.length; i++) {
+                assertArrayEquals(expected[i], ensemble.distributionForInstance(rows.instance(i)), 1e-12,
+                    "pass " + pass + ", row " + i);
+            }
+            double[][] batch = ensemble.distributionsForInstances(rows);
+            for (int i = 0; i < expected.length; i++) {
+                assertArrayEquals(expected[i], batch[i], 1e-12, "batch of pass " + pass + ", row " + i);
+            }
+        }
+    }
+
+    /**
+     * The pipelines of members on one view, transforming on several threads at once
+     * as the members of concurrent predictions do, each get back exactly their own rows
+     */
+    @Test
+    void pipelinesOnOneViewTransformConcurrently(@TempDir Path dir) throws Exception {
+        DataProcessor processor = new DataProcessor(writeDataset(dir.resolve("mixed.arff"), 1000).toString());
+        Instances raw = processor.getOriginalData();
+        Instances view = processor.getView(DataView.NUMERIC_NORMALIZED);
+        List<Filter> filters = processor.getFittedFilters(DataView.NUMERIC_NORMALIZED);
+
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> mismatches = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                PreprocessingPipeline pipeline = new PreprocessingPipeline(raw, filters, view);
+                mismatches.add(pool.submit(() -> {
+                    int wrong = 0;
+                    for (int pass = 0; pass < TRANSFORM_PASSES; pass++) {
+                        for (int i = 0; i < raw.numInstances(); i++) {
+                            double[] row = pipeline.transform((Instance) raw.instance(i).copy()).toDoubleArray();
+                            if (!Arrays.equals(view.instance(i).toDoubleArray(), row)) {
+                                wrong++;
+                            }
+                        }
+                    }
+                    return wrong;
+                }));
+            }
+            for (Future<Integer> wrong : mismatches) {
+                assertEquals(0, wrong.get(), "rows transformed into another caller's row");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * A nominal and two numeric attributes, so the view goes through both
+     * NominalToBinary and Normalize
+     */
+    private static Path writeDataset(Path file, int numRows) throws Exception {
+        StringBuilder arff = new StringBuilder("@relation mixed\n")
+            .append("@attribute colour {red,green,blue}\n")
+            .append("@attribute x numeric\n")
+            .append("@attribute y numeric\n")
+            .append("@attribute class {a,b}\n")
+            .append("@data\n");
+        String[] colours = {"red", "green", "blue"};
+        Random random = new Random(1);
+        for (int i = 0; i < numRows; i++) {
+            int colour = random.nextInt(3);
+            double x = random.nextGaussian() * 5 + 20;
+            double y = random.nextGaussian();
+            boolean a = x / 10 + y + colour + random.nextGaussian() > 3.5;
+            arff.append(colours[colour]).append(',').append(x).append(',').append(y)
+                .append(',').append(a ? "a" : "b").append('\n');
+        }
+        Files.writeString(file, arff);
+        return file;
+    }
+}
@@ -0,0 +1,79 @@
+package com.wekaproject;
+
+import org.junit.jupiter.api.Test;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.functions.Logistic;
+import weka.classifiers.trees.J48;
+import weka.core.Instances;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FoldPlanTest {
+
+    @Test
+    void foldsHoldTheRowsOfTrainCVAndTestCVInOrder() {
+        Instances nominal = TestData.withIds(157, 3, true, 7);
+        assertSameFolds(nominal, 10, 1);
+        assertSameFolds(nominal, 3, 42);
+
+        Instances numeric = new Instances(nominal);
+        numeric.setClassIndex(2);
+        assertSameFolds(numeric, 10, 1);
+    }
+
+    @Test
+    void moreFoldsThanRowsOfAClassStillMatch() {
+        assertSameFolds(TestData.withIds(23, 3, false, 3), 10, 5);
+    }
+
+    @Test
+    void crossValidationMatchesCrossValidateModel() throws Exception {
+        Instances data = TestData.withIds(300, 3, false, 11);
+        data.deleteAttributeAt(0);
+        assertSameEvaluation(new J48(), data);
+        assertSameEvaluation(new Logistic(), data);
+    }
+
+    /**
+     * The plan's folds against the folds Evaluation.crossValidateModel cuts
+     */
+    private static void assertSameFolds(Instances data, int numFolds, long seed) {
+        FoldPlan plan = FoldPlan.create(data, numFolds, new Random(seed));
+
+        Random random = new Random(seed);
+        Instances weka = new Instances(data);
+        weka.randomize(random);
+        if (weka.classAttribute().isNominal()) {
+            weka.stratify(numFolds);
+        }
+        for (int fold = 0; fold < numFolds; fold++) {
+            Instances train = weka.trainCV(numFolds, fold, random);
+            Instances test = weka.testCV(numFolds, fold);
+            assertArrayEquals(ids(train), ids(plan.trainFold(data, fold)), "training rows of fold " + fold);
+            assertArrayEquals(ids(test), ids(plan.testFold(data, fold)), "test rows of fold " + fold);
+        }
+    }
+
+    private static void assertSameEvaluation(Classifier classifier, Instances data) throws Exception {
+        Evaluation expected = new Evaluation(data);
+        expected.crossValidateModel(classifier, data, 10, new Random(1));
+        Evaluation actual = new CrossValidator(null).crossValidate(classifier, data, 10, new Random(1));
+
+        assertEquals(expected.correct(), actual.correct());
+        assertArrayEquals(expected.confusionMatrix(), actual.confusionMatrix());
+        assertEquals(expected.meanAbsoluteError(), actual.meanAbsoluteError(), 1e-12);
+        assertEquals(expected.rootMeanSquaredError(), actual.rootMeanSquaredError(), 1e-12);
+    }
+
+    private static double[] ids(Instances rows) {
+        double[] ids = new double[rows.numInstances()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = rows.instance(i).value(0);
+        }
+        return ids;
+    }
+}
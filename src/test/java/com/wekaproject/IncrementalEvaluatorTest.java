@@ -0,0 +1,81 @@
+package com.wekaproject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import weka.classifiers.Evaluation;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.classifiers.lazy.IBk;
+import weka.core.Instances;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalEvaluatorTest {
+
+    @Test
+    void prequentialTestsEachRowOnTheRowsBeforeIt(@TempDir Path dir) throws Exception {
+        Instances data = TestData.grid(400, 3, 6, 3, 1);
+        IncrementalEvaluator evaluator = new IncrementalEvaluator(new ArffStream(write(dir, data).toString()));
+
+        IBk prototype = new IBk(3);
+        prototype.setWindowSize(50);
+        Evaluation actual = evaluator.prequential(prototype);
+
+        IBk model = new IBk(3);
+        model.setWindowSize(50);
+        model.buildClassifier(new Instances(data, 0));
+        Evaluation expected = new Evaluation(data);
+        for (int i = 0; i < data.numInstances(); i++) {
+            if (i > 0) {
+                expected.evaluateModelOnceAndRecordPrediction(model, data.instance(i));
+            }
+            model.updateClassifier(data.instance(i));
+        }
+
+        assertEquals(data.numInstances() - 1, actual.numInstances());
+        assertArrayEquals(expected.confusionMatrix(), actual.confusionMatrix());
+    }
+
+    @Test
+    void lazyLearnersRunPrequentiallyAndTheRestCrossValidate(@TempDir Path dir) throws Exception {
+        Instances data = TestData.grid(300, 2, 5, 3, 2);
+        IncrementalEvaluator evaluator = new IncrementalEvaluator(new ArffStream(write(dir, data).toString()));
+
+        List<Result> results = evaluator.runIncrementalClassifications(5);
+
+        // SGD only handles two classes, so it is skipped
+        assertEquals(2, results.size());
+        Result naiveBayes = results.get(0);
+        assertEquals(data.numInstances(), naiveBayes.getTotalInstances());
+        assertEquals(evaluator.crossValidate(new NaiveBayesUpdateable(), 5).correct(),
+            naiveBayes.getCorrectlyClassified());
+
+        Result ibk = results.get(1);
+        assertTrue(ibk.getAlgorithmName().contains("prequential"), ibk.getAlgorithmName());
+        assertEquals(data.numInstances() - 1, ibk.getTotalInstances());
+        results.forEach(r -> assertEquals(Result.Status.OK, r.getStatus(), r.getAlgorithmName()));
+    }
+
+    @Test
+    void batchCompareStreamsDatasets(@TempDir Path dir) throws Exception {
+        Path dataset = write(dir, TestData.grid(200, 2, 5, 2, 3));
+
+        Map<String, List<Result>> leaderboard = BatchCompare.compareAll(List.of(dataset), 1, false, true, null, 0);
+
+        List<Result> results = leaderboard.get(dataset.toString());
+        assertEquals(3, results.size());
+        results.forEach(r -> assertEquals(Result.Status.OK, r.getStatus(), r.getAlgorithmName()));
+    }
+
+    private static Path write(Path dir, Instances data) throws Exception {
+        Path file = dir.resolve(data.relationName() + ".arff");
+        Files.writeString(file, data.toString());
+        return file;
+    }
+}
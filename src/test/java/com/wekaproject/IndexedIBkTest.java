@@ -0,0 +1,88 @@
+package com.wekaproject;
+
+import org.junit.jupiter.api.Test;
+import weka.classifiers.lazy.IBk;
+import weka.core.Instances;
+import weka.core.SelectedTag;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexedIBkTest {
+    private static final int[] KS = {1, 3, 7};
+
+    @Test
+    void kdTreeFindsTheSameNeighboursAsIBk() throws Exception {
+        // Few dimensions go to the KD-tree; the grid makes many distances tie
+        Instances train = TestData.grid(500, 3, 5, 3, 1);
+        // Queries from a wider grid, so they also widen the attribute ranges
+        Instances test = TestData.grid(150, 3, 7, 3, 2);
+        assertSameAsIBk(train, test);
+    }
+
+    @Test
+    void ballTreeFindsTheSameNeighboursAsIBk() throws Exception {
+        int dimensions = NeighbourIndex.KD_TREE_MAX_DIMENSIONS + 4;
+        Instances train = TestData.grid(400, dimensions, 3, 2, 3);
+        Instances test = TestData.grid(100, dimensions, 4, 2, 4);
+        assertSameAsIBk(train, test);
+    }
+
+    @Test
+    void queriesWithMissingValuesMatchIBk() throws Exception {
+        Instances train = TestData.grid(300, 4, 5, 2, 5);
+        Instances test = TestData.withMissingValues(TestData.grid(100, 4, 5, 2, 6), 0.2, 7);
+        assertSameAsIBk(train, test);
+    }
+
+    @Test
+    void multiKQueriesMatchIBk() throws Exception {
+        Instances train = TestData.grid(400, 3, 4, 3, 8);
+        Instances test = TestData.grid(120, 3, 5, 3, 9);
+        MultiKIBk multiK = MultiKIBk.forKs(new IndexedIBk(1), KS[KS.length - 1]);
+        multiK.buildClassifier(train);
+        assertTrue(((IndexedIBk) multiK).isIndexed());
+        IBk[] plain = new IBk[KS.length];
+        for (int j = 0; j < KS.length; j++) {
+            plain[j] = new IBk(KS[j]);
+            plain[j].buildClassifier(train);
+        }
+
+        double[][][] batch = multiK.distributionsForKs(test, KS);
+        for (int i = 0; i < test.numInstances(); i++) {
+            for (int j = 0; j < KS.length; j++) {
+                assertArrayEquals(plain[j].distributionForInstance(test.instance(i)), batch[i][j], 1e-12,
+                    "row " + i + ", K=" + KS[j]);
+            }
+        }
+    }
+
+    private static void assertSameAsIBk(Instances train, Instances test) throws Exception {
+        for (int k : KS) {
+            for (int weighting : new int[]{IBk.WEIGHT_NONE, IBk.WEIGHT_INVERSE}) {
+                // Row by row and as one batch, each against its own IBk since queries widen the ranges
+                IBk plain = ibk(new IBk(k), weighting, train);
+                IndexedIBk indexed = (IndexedIBk) ibk(new IndexedIBk(k), weighting, train);
+                assertTrue(indexed.isIndexed());
+                for (int i = 0; i < test.numInstances(); i++) {
+                    assertArrayEquals(plain.distributionForInstance(test.instance(i)),
+                        indexed.distributionForInstance(test.instance(i)), 1e-12, "row " + i + ", K=" + k);
+                }
+
+                plain = ibk(new IBk(k), weighting, train);
+                indexed = (IndexedIBk) ibk(new IndexedIBk(k), weighting, train);
+                double[][] batch = indexed.distributionsForInstances(test);
+                for (int i = 0; i < test.numInstances(); i++) {
+                    assertArrayEquals(plain.distributionForInstance(test.instance(i)), batch[i], 1e-12,
+                        "batch row " + i + ", K=" + k);
+                }
+            }
+        }
+    }
+
+    private static IBk ibk(IBk model, int weighting, Instances train) throws Exception {
+        model.setDistanceWeighting(new SelectedTag(weighting, IBk.TAGS_WEIGHTING));
+        model.buildClassifier(train);
+        return model;
+    }
+}
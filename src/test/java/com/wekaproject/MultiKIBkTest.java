@@ -0,0 +1,73 @@
+package com.wekaproject;
+
+import org.junit.jupiter.api.Test;
+import weka.classifiers.Evaluation;
+import weka.classifiers.lazy.IBk;
+import weka.core.Instances;
+import weka.core.SelectedTag;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MultiKIBkTest {
+    private static final int[] KS = {1, 3, 5, 7};
+    private static final int[] WEIGHTINGS = {IBk.WEIGHT_NONE, IBk.WEIGHT_INVERSE, IBk.WEIGHT_SIMILARITY};
+
+    @Test
+    void distributionsEqualSeparateIBkWithTiedDistances() throws Exception {
+        // A 4x4x4 grid puts many training rows at the same distance from a query
+        Instances data = TestData.grid(400, 3, 4, 3, 1);
+        Instances train = TestData.rows(data, 0, 300);
+        Instances test = TestData.rows(data, 300, 400);
+        for (int weighting : WEIGHTINGS) {
+            assertSameAsSeparateIBk(train, test, weighting);
+        }
+    }
+
+    @Test
+    void distributionsEqualSeparateIBkWithMissingValues() throws Exception {
+        Instances data = TestData.withMissingValues(TestData.grid(300, 4, 5, 2, 2), 0.1, 3);
+        assertSameAsSeparateIBk(TestData.rows(data, 0, 200), TestData.rows(data, 200, 300), IBk.WEIGHT_INVERSE);
+    }
+
+    @Test
+    void crossValidationEqualsSeparateRuns() throws Exception {
+        Instances data = TestData.grid(500, 3, 4, 3, 4);
+        FoldPlan plan = FoldPlan.create(data, 10, new Random(1));
+        Evaluation[] multiK = new CrossValidator(null).crossValidateMultiK(new IBk(), KS, data, plan, null);
+        for (int j = 0; j < KS.length; j++) {
+            Evaluation separate = new CrossValidator(null).crossValidate(new IBk(KS[j]), data, plan, null);
+            assertEquals(separate.correct(), multiK[j].correct(), "K=" + KS[j]);
+            assertArrayEquals(separate.confusionMatrix(), multiK[j].confusionMatrix(), "K=" + KS[j]);
+            assertEquals(separate.meanAbsoluteError(), multiK[j].meanAbsoluteError(), 1e-12, "K=" + KS[j]);
+        }
+    }
+
+    /**
+     * One MultiKIBk against an IBk per K, queried with the same rows in the same
+     * order, since every query widens the attribute ranges for the next
+     */
+    private static void assertSameAsSeparateIBk(Instances train, Instances test, int weighting) throws Exception {
+        IBk template = new IBk();
+        template.setDistanceWeighting(new SelectedTag(weighting, IBk.TAGS_WEIGHTING));
+        MultiKIBk multiK = MultiKIBk.forKs(template, KS[KS.length - 1]);
+        multiK.buildClassifier(train);
+
+        IBk[] separate = new IBk[KS.length];
+        for (int j = 0; j < KS.length; j++) {
+            separate[j] = new IBk(KS[j]);
+            separate[j].setDistanceWeighting(new SelectedTag(weighting, IBk.TAGS_WEIGHTING));
+            separate[j].buildClassifier(train);
+        }
+
+        for (int i = 0; i < test.numInstances(); i++) {
+            double[][] byK = multiK.distributionsForKs(test.instance(i), KS);
+            for (int j = 0; j < KS.length; j++) {
+                assertArrayEquals(separate[j].distributionForInstance(test.instance(i)), byK[j], 1e-12,
+                    "row " + i + ", K=" + KS[j] + ", weighting " + weighting);
+            }
+        }
+    }
+}
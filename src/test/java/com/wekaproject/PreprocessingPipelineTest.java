@@ -0,0 +1,52 @@
+package com.wekaproject;
+
+import org.junit.jupiter.api.Test;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Normalize;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class PreprocessingPipelineTest {
+
+    @Test
+    void transformsRowsLikeTheFittedFilters() throws Exception {
+        Instances data = TestData.withIds(200, 2, false, 1);
+        Normalize normalize = new Normalize();
+        normalize.setInputFormat(data);
+        Instances view = Filter.useFilter(data, normalize);
+
+        PreprocessingPipeline pipeline = new PreprocessingPipeline(data, List.of(normalize), view);
+        assertTransformsTo(pipeline, data, view);
+    }
+
+    @Test
+    void refittingTheOriginalFilterLeavesThePipelineAlone() throws Exception {
+        Instances data = TestData.withIds(200, 2, false, 2);
+        Normalize normalize = new Normalize();
+        normalize.setInputFormat(data);
+        Instances view = Filter.useFilter(data, normalize);
+        PreprocessingPipeline pipeline = new PreprocessingPipeline(data, List.of(normalize), view);
+
+        // Fit the same filter object again on rows with other ranges
+        Instances other = TestData.withIds(50, 2, false, 3);
+        for (Instance instance : other) {
+            instance.setValue(1, instance.value(1) * 10);
+        }
+        normalize.setInputFormat(other);
+        Filter.useFilter(other, normalize);
+
+        assertTransformsTo(pipeline, data, view);
+    }
+
+    private static void assertTransformsTo(PreprocessingPipeline pipeline, Instances raw, Instances expected)
+        throws Exception {
+        for (int i = 0; i < raw.numInstances(); i++) {
+            Instance transformed = pipeline.transform((Instance) raw.instance(i).copy());
+            assertArrayEquals(expected.instance(i).toDoubleArray(), transformed.toDoubleArray(), 1e-12, "row " + i);
+        }
+    }
+}
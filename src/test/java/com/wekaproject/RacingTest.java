@@ -0,0 +1,70 @@
+package com.wekaproject;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RacingTest {
+
+    @Test
+    void roundsCostFarLessThanTheFinalCrossValidation() {
+        int numRows = 80000;
+        List<Integer> sizes = Racing.roundSizes(numRows);
+        assertEquals(List.of(10000, 20000), sizes);
+
+        // Rows trained on, summed over the folds, as a share of 10-fold cross-validation
+        double full = 10 * 0.9 * numRows;
+        double rounds = 0;
+        for (int size : sizes) {
+            rounds += Racing.ROUND_FOLDS * (Racing.ROUND_FOLDS - 1.0) / Racing.ROUND_FOLDS * size;
+        }
+        assertTrue(rounds / full < 0.2, "rounds cost " + rounds / full + " of a full run");
+    }
+
+    @Test
+    void smallDataGetsNoRounds() {
+        assertEquals(Collections.emptyList(), Racing.roundSizes(4 * Racing.MIN_SAMPLE_SIZE - 4));
+        assertEquals(List.of(Racing.MIN_SAMPLE_SIZE), Racing.roundSizes(4 * Racing.MIN_SAMPLE_SIZE));
+    }
+
+    @Test
+    void raceStopsWhenFewerThanHalfAreDropped() {
+        assertTrue(Racing.keepRacing(8, 4));
+        assertTrue(Racing.keepRacing(3, 2));
+        assertFalse(Racing.keepRacing(8, 3));
+        assertFalse(Racing.keepRacing(5, 0));
+    }
+
+    @Test
+    void roundWorkScalesToTenFoldsOnAllRows() {
+        // 5 folds on 1000 rows train on 4000 rows in total, 10 folds on 8000 rows on 72000
+        assertEquals(18 * 100 + 8 * 10, Racing.fullWorkMillis(100, 10, 1000, 8000, 10));
+    }
+
+    @Test
+    void fiveFoldsAreEnoughToDropAClearlyWorseApproach() {
+        double[] leader = {0.91, 0.9, 0.92, 0.89, 0.9};
+        double[] candidate = {0.7, 0.72, 0.69, 0.71, 0.7};
+        assertTrue(Racing.significantlyWorse(leader, candidate, Racing.DEFAULT_SIGNIFICANCE));
+        assertFalse(Racing.significantlyWorse(leader, leader.clone(), Racing.DEFAULT_SIGNIFICANCE));
+    }
+
+    @Test
+    void reportShowsWhenRacingCostMoreThanItSaved() {
+        RaceReport report = new RaceReport();
+        report.addRound(1000, 4, Collections.emptyList());
+        report.addWork(300, 0);
+        report.addWork(2000, 2000);
+        assertEquals(-300, report.getEstimatedSavedMillis());
+        assertTrue(report.toString().contains("cost about 0.3 s extra"), report.toString());
+
+        report.addWork(0, 1000);
+        assertEquals(700, report.getEstimatedSavedMillis());
+        assertTrue(report.describeSaving().startsWith("saved about 0.7 s"), report.describeSaving());
+    }
+}
@@ -0,0 +1,105 @@
+package com.wekaproject;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Small synthetic datasets for the tests
+ */
+final class TestData {
+    private TestData() {
+    }
+
+    /**
+     * Numeric attributes on an integer grid of the given size, so many rows lie at
+     * the same distance from each other, and a nominal class that mostly follows
+     * the sum of the attributes
+     */
+    static Instances grid(int numRows, int numAttributes, int gridSize, int numClasses, long seed) {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int a = 0; a < numAttributes; a++) {
+            attributes.add(new Attribute("x" + a));
+        }
+        attributes.add(classAttribute(numClasses));
+        Instances data = new Instances("grid", attributes, numRows);
+        data.setClassIndex(numAttributes);
+
+        Random random = new Random(seed);
+        for (int i = 0; i < numRows; i++) {
+            double[] values = new double[numAttributes + 1];
+            double sum = 0;
+            for (int a = 0; a < numAttributes; a++) {
+                values[a] = random.nextInt(gridSize);
+                sum += values[a];
+            }
+            int label = (int) (sum / (numAttributes * (gridSize - 1) + 1) * numClasses);
+            values[numAttributes] = random.nextDouble() < 0.15 ? random.nextInt(numClasses) : label;
+            data.add(new DenseInstance(1.0, values));
+        }
+        return data;
+    }
+
+    /**
+     * Continuous numeric attributes and a nominal class, with a numeric "id"
+     * attribute first that numbers the rows, so rows can be recognised after Weka
+     * has copied them
+     */
+    static Instances withIds(int numRows, int numClasses, boolean missingClasses, long seed) {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("id"));
+        attributes.add(new Attribute("x"));
+        attributes.add(new Attribute("y"));
+        attributes.add(classAttribute(numClasses));
+        Instances data = new Instances("ids", attributes, numRows);
+        data.setClassIndex(3);
+
+        Random random = new Random(seed);
+        for (int i = 0; i < numRows; i++) {
+            double x = random.nextGaussian();
+            double y = random.nextGaussian();
+            double label = missingClasses && random.nextDouble() < 0.05
+                ? Utils.missingValue()
+                : (x + y > 0 ? 1 : 0) + (numClasses > 2 && x > 1 ? 1 : 0);
+            data.add(new DenseInstance(1.0, new double[]{i, x, y, label}));
+        }
+        return data;
+    }
+
+    /**
+     * Copy of data with the given share of the attribute values, never the class, set missing
+     */
+    static Instances withMissingValues(Instances data, double share, long seed) {
+        Instances copy = new Instances(data);
+        Random random = new Random(seed);
+        for (Instance instance : copy) {
+            for (int a = 0; a < copy.numAttributes(); a++) {
+                if (a != copy.classIndex() && random.nextDouble() < share) {
+                    instance.setMissing(a);
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * The given rows of data as a new dataset
+     */
+    static Instances rows(Instances data, int from, int to) {
+        return new Instances(data, from, to - from);
+    }
+
+    private static Attribute classAttribute(int numClasses) {
+        List<String> labels = new ArrayList<>();
+        for (int c = 0; c < numClasses; c++) {
+            labels.add("c" + c);
+        }
+        return new Attribute("class", labels);
+    }
+}